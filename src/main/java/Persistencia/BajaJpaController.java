@@ -0,0 +1,64 @@
+package Persistencia;
+
+import java.io.Serializable;
+import java.util.Date;
+import java.util.List;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.TemporalType;
+import logica.Baja;
+import logica.VersionesDatos;
+
+public class BajaJpaController implements Serializable {
+
+    public BajaJpaController(EntityManagerFactory emf) {
+        this.emf = emf;
+    }
+
+    private EntityManagerFactory emf = null;
+
+    public EntityManager getEntityManager() {
+        return emf.createEntityManager();
+    }
+
+    // Dentro de la transacción del borrado: si se revierte, la baja tampoco queda
+    static void registrar(EntityManager em, VersionesDatos.Coleccion coleccion, Object clave) {
+        em.persist(new Baja(coleccion, String.valueOf(clave)));
+    }
+
+    // Claves eliminadas desde el instante dado (idx_baja_coleccion_fecha). Un DNI dado de baja y
+    // vuelto a cargar existe de nuevo: esa baja ya no vale y el cliente borraría el paciente
+    // que acaba de recibir en modificados. Turnos e historiales usan ids generados que no se repiten
+    public List<String> findClavesEliminadasDesde(VersionesDatos.Coleccion coleccion, Date desde) {
+        EntityManager em = getEntityManager();
+        try {
+            return em.createQuery("SELECT b.clave FROM Baja b "
+                    + "WHERE b.coleccion = :coleccion AND b.eliminadoEn >= :desde "
+                    + (coleccion == VersionesDatos.Coleccion.PACIENTES
+                            ? "AND NOT EXISTS (SELECT p FROM Paciente p WHERE p.dni = b.clave) " : "")
+                    + "ORDER BY b.eliminadoEn, b.id", String.class)
+                    .setParameter("coleccion", coleccion)
+                    .setParameter("desde", desde, TemporalType.TIMESTAMP)
+                    .getResultList();
+        } finally {
+            em.close();
+        }
+    }
+
+    public int purgarAnteriores(Date limite) {
+        EntityManager em = getEntityManager();
+        try {
+            em.getTransaction().begin();
+            int borradas = em.createQuery("DELETE FROM Baja b WHERE b.eliminadoEn < :limite")
+                    .setParameter("limite", limite, TemporalType.TIMESTAMP)
+                    .executeUpdate();
+            em.getTransaction().commit();
+            return borradas;
+        } finally {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            em.close();
+        }
+    }
+}
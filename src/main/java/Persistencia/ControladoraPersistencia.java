@@ -1,23 +1,64 @@
 package Persistencia;
 
+import logica.HistorialListado;
 import logica.HistorialMedico;
+import logica.Horario;
 import logica.Odontograma;
 import logica.Paciente;
+import logica.PacienteListado;
 import logica.Turno;
+import logica.TurnoListado;
+import logica.VersionesDatos;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
-import java.util.stream.Collectors;
-import javax.persistence.EntityManager;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import javax.persistence.EntityManagerFactory;
+import org.eclipse.persistence.descriptors.ClassDescriptor;
+import org.eclipse.persistence.internal.identitymaps.IdentityMap;
+import org.eclipse.persistence.internal.identitymaps.IdentityMapManager;
+import org.eclipse.persistence.internal.sessions.AbstractSession;
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.eclipse.persistence.sessions.SessionProfiler;
+import org.eclipse.persistence.tools.profiler.PerformanceMonitor;
 
 public class ControladoraPersistencia {
 
-    HorarioJpaController horaJPA = new HorarioJpaController();
-    HistorialMedicoJpaController historialJPA = new HistorialMedicoJpaController();
-    OdontogramaJpaController odontograJPA = new OdontogramaJpaController();
-    PacienteJpaController pacienteJPA = new PacienteJpaController();
-    PersonaJpaController personaJPA = new PersonaJpaController();
-    ResponsableJpaController responsableJPA = new ResponsableJpaController();
-    TurnoJpaController turnoJPA = new TurnoJpaController();
+    public static final String PERSISTENCE_UNIT = "ConsulOdontPU";
+
+    HorarioJpaController horaJPA;
+    HistorialMedicoJpaController historialJPA;
+    OdontogramaJpaController odontograJPA;
+    PacienteJpaController pacienteJPA;
+    PersonaJpaController personaJPA;
+    ResponsableJpaController responsableJPA;
+    TurnoJpaController turnoJPA;
+    ImportacionJpaController importacionJPA;
+    BajaJpaController bajaJPA;
+
+    private final EntityManagerFactory emf;
+
+    public ControladoraPersistencia() {
+        this(Persistencia.createEntityManagerFactory(PERSISTENCE_UNIT));
+    }
+
+    // Todos los controladores comparten la misma fábrica (y con ella el pool y la caché)
+    public ControladoraPersistencia(EntityManagerFactory emf) {
+        this.emf = emf;
+        horaJPA = new HorarioJpaController(emf);
+        historialJPA = new HistorialMedicoJpaController(emf);
+        odontograJPA = new OdontogramaJpaController(emf);
+        pacienteJPA = new PacienteJpaController(emf);
+        personaJPA = new PersonaJpaController(emf);
+        responsableJPA = new ResponsableJpaController(emf);
+        turnoJPA = new TurnoJpaController(emf);
+        importacionJPA = new ImportacionJpaController(emf);
+        bajaJPA = new BajaJpaController(emf);
+    }
 
     // ============== MÉTODOS CRUD PACIENTE ==============
 
@@ -29,11 +70,17 @@ public class ControladoraPersistencia {
         return pacienteJPA.findPacienteEntities();
     }
 
+    public List<PacienteListado> traerListadoPacientes() {
+        return pacienteJPA.findListadoPacientes();
+    }
+
     public Paciente traerPaciente(String dni) {
         return pacienteJPA.findPaciente(dni);
     }
 
     public void editarPaciente(Paciente paciente) throws Exception {
+        // Antes del merge, para que el cambio de nombre llegue a las columnas de búsqueda
+        paciente.actualizarCamposBusqueda();
         pacienteJPA.edit(paciente);
     }
 
@@ -41,67 +88,137 @@ public class ControladoraPersistencia {
         pacienteJPA.destroy(dni);
     }
 
-    public List<Paciente> buscarPacientes(String criterio) {
-        List<Paciente> todos = pacienteJPA.findPacienteEntities();
-        String criterioBajo = criterio.toLowerCase();
+    public List<PacienteListado> traerPaginaPacientes(String despuesDeDni, int limite) {
+        return pacienteJPA.findListadoPacientesDespuesDe(despuesDeDni, limite);
+    }
 
-        return todos.stream()
-                .filter(p -> p.getNombre().toLowerCase().contains(criterioBajo) ||
-                        p.getApellido().toLowerCase().contains(criterioBajo) ||
-                        p.getDniPaciente().contains(criterio))
-                .collect(Collectors.toList());
+    public List<PacienteListado> buscarPacientes(String criterio, int limite) {
+        List<String> terminos = new ArrayList<>();
+        String normalizado = Paciente.normalizar(criterio);
+        if (normalizado != null) {
+            for (String t : normalizado.split("\\s+")) {
+                // Más de tres palabras no acota más y solo agrega condiciones
+                if (!t.isEmpty() && terminos.size() < 3) {
+                    terminos.add(t);
+                }
+            }
+        }
+        if (terminos.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return pacienteJPA.buscarPacientes(terminos, limite);
+    }
+
+    public int normalizarBusquedaPacientes() {
+        return pacienteJPA.normalizarPendientes();
     }
 
     // ============== MÉTODOS CRUD TURNO ==============
 
+    // TurnoJpaController no mantiene Paciente.listaTurno: al cambiar un turno se quita
+    // de la caché compartida a los pacientes afectados, sin cargar sus colecciones
     public void crearTurno(Turno turno) throws Exception {
         turnoJPA.create(turno);
+        invalidarPaciente(turno.getPacien());
     }
 
     public List<Turno> traerTurnos() {
         return turnoJPA.findTurnoEntities();
     }
 
+    public List<TurnoListado> traerListadoTurnos() {
+        return turnoJPA.findListadoTurnos();
+    }
+
     public Turno traerTurno(int id) {
         return turnoJPA.findTurno(id);
     }
 
     public void editarTurno(Turno turno) throws Exception {
+        Turno anterior = turnoJPA.findTurno(turno.getId_turno());
         turnoJPA.edit(turno);
+        if (anterior != null) {
+            invalidarPaciente(anterior.getPacien());
+        }
+        invalidarPaciente(turno.getPacien());
     }
 
     public void eliminarTurno(int id) throws Exception {
+        Turno anterior = turnoJPA.findTurno(id);
         turnoJPA.destroy(id);
+        if (anterior != null) {
+            invalidarPaciente(anterior.getPacien());
+        }
     }
 
-    public List<Turno> traerTurnosPorFecha(Date fecha) {
-        List<Turno> todos = turnoJPA.findTurnoEntities();
+    public int completarMinutosTurnos() {
+        int completados = turnoJPA.completarMinutosPendientes();
+        if (completados > 0) {
+            olvidarTurnosEnCache();
+        }
+        return completados;
+    }
 
-        return todos.stream()
-                .filter(t -> {
-                    if (t.getFecha_Turno() == null || fecha == null)
-                        return false;
-                    // Comparar solo año, mes y día
-                    return t.getFecha_Turno().getYear() == fecha.getYear() &&
-                            t.getFecha_Turno().getMonth() == fecha.getMonth() &&
-                            t.getFecha_Turno().getDate() == fecha.getDate();
-                })
-                .collect(Collectors.toList());
+    // En modo extend la restricción no se crea si ya había turnos repetidos: se vuelve a
+    // intentar después de marcar, y las UPDATE masivas no pasan por la caché de Turno.
+    // La restricción anterior sobre hora_Turno se borra una vez que está la nueva
+    public int marcarHorariosOcupados() {
+        int marcados = turnoJPA.marcarHorariosOcupados();
+        if (marcados > 0) {
+            olvidarTurnosEnCache();
+        }
+        new IndicesBaseDatos(emf)
+                .unico(Turno.class, Turno.RESTRICCION_HORARIO)
+                .descartar(Turno.class, Turno.RESTRICCION_HORARIO_TEXTO)
+                .crearFaltantes();
+        return marcados;
     }
 
-    public List<Turno> traerTurnosPorPaciente(String dniPaciente) {
-        List<Turno> todos = turnoJPA.findTurnoEntities();
+    private void olvidarTurnosEnCache() {
+        emf.getCache().evict(Turno.class);
+        JpaHelper.getServerSession(emf).getIdentityMapAccessor().invalidateQueryCache(Turno.class);
+    }
+
+    public List<Object[]> traerHorariosOcupados(LocalDate desde, LocalDate hasta) {
+        return turnoJPA.findHorariosOcupados(desde, hasta);
+    }
+
+    public List<Turno> traerTurnosPorFecha(LocalDate fecha) {
+        if (fecha == null) {
+            return new ArrayList<>();
+        }
+        return turnoJPA.findTurnosPorRangoFecha(fecha, fecha);
+    }
+
+    public List<Turno> traerTurnosPorRangoFecha(LocalDate desde, LocalDate hasta) {
+        if (desde == null || hasta == null) {
+            return new ArrayList<>();
+        }
+        return turnoJPA.findTurnosPorRangoFecha(desde, hasta);
+    }
+
+    public List<TurnoListado> traerListadoTurnosPorRangoFecha(LocalDate desde, LocalDate hasta) {
+        if (desde == null || hasta == null) {
+            return new ArrayList<>();
+        }
+        return turnoJPA.findListadoTurnosPorRangoFecha(desde, hasta);
+    }
 
-        return todos.stream()
-                .filter(t -> t.getPacien() != null &&
-                        t.getPacien().getDniPaciente().equals(dniPaciente))
-                .collect(Collectors.toList());
+    public List<TurnoListado> traerPaginaTurnos(LocalDate despuesDeFecha, Integer despuesDeId, int limite) {
+        return turnoJPA.findListadoTurnosDespuesDe(despuesDeFecha, despuesDeId, limite);
+    }
+
+    public List<Turno> traerTurnosPorPaciente(String dniPaciente) {
+        return turnoJPA.findTurnosPorPaciente(dniPaciente);
     }
 
     // ============== MÉTODOS CRUD HISTORIAL MÉDICO ==============
 
+    // Las colecciones inversas (Paciente.historialesMedicos, HistorialMedico.odontograma)
+    // no se actualizan al escribir el lado dueño: se quitan de la caché compartida
     public void crearHistorialMedico(HistorialMedico historial) throws Exception {
         historialJPA.create(historial);
+        invalidarPaciente(historial.getPaciente());
     }
 
     public List<HistorialMedico> traerHistorialesMedicos() {
@@ -113,34 +230,61 @@ public class ControladoraPersistencia {
     }
 
     public void editarHistorialMedico(HistorialMedico historial) throws Exception {
+        HistorialMedico anterior = historialJPA.findHistorialMedico(historial.getId());
         historialJPA.edit(historial);
+        if (anterior != null) {
+            invalidarPaciente(anterior.getPaciente());
+        }
+        invalidarPaciente(historial.getPaciente());
     }
 
     public void eliminarHistorialMedico(Long id) throws Exception {
+        HistorialMedico anterior = historialJPA.findHistorialMedico(id);
         historialJPA.destroy(id);
+        if (anterior != null) {
+            invalidarPaciente(anterior.getPaciente());
+        }
     }
 
     public List<HistorialMedico> traerHistorialesPorPaciente(String dniPaciente) {
-        List<HistorialMedico> todos = historialJPA.findHistorialMedicoEntities();
-
-        return todos.stream()
-                .filter(h -> h.getPaciente() != null &&
-                        h.getPaciente().getDniPaciente().equals(dniPaciente))
-                .sorted((h1, h2) -> {
-                    // Ordenar por número de consulta
-                    if (h1.getNumero_consulta() == null)
-                        return 1;
-                    if (h2.getNumero_consulta() == null)
-                        return -1;
-                    return h1.getNumero_consulta().compareTo(h2.getNumero_consulta());
-                })
-                .collect(Collectors.toList());
+        List<HistorialMedico> ordenados = historialJPA.findHistorialesPorPaciente(dniPaciente);
+
+        // MySQL ordena los NULL primero; las consultas sin número van al final como antes
+        List<HistorialMedico> resultado = new ArrayList<>(ordenados.size());
+        List<HistorialMedico> sinNumero = new ArrayList<>();
+        for (HistorialMedico h : ordenados) {
+            if (h.getNumero_consulta() == null) {
+                sinNumero.add(h);
+            } else {
+                resultado.add(h);
+            }
+        }
+        resultado.addAll(sinNumero);
+        return resultado;
+    }
+
+    public List<HistorialListado> traerListadoHistorialesPorPaciente(String dniPaciente) {
+        List<HistorialListado> ordenados = historialJPA.findListadoHistorialesPorPaciente(dniPaciente);
+
+        // Mismo orden que traerHistorialesPorPaciente: sin número al final
+        List<HistorialListado> resultado = new ArrayList<>(ordenados.size());
+        List<HistorialListado> sinNumero = new ArrayList<>();
+        for (HistorialListado h : ordenados) {
+            if (h.getNumero_consulta() == null) {
+                sinNumero.add(h);
+            } else {
+                resultado.add(h);
+            }
+        }
+        resultado.addAll(sinNumero);
+        return resultado;
     }
 
     // ============== MÉTODOS CRUD ODONTOGRAMA ==============
 
     public void crearOdontograma(Odontograma odonto) throws Exception {
         odontograJPA.create(odonto);
+        invalidarHistorial(odonto.getHistorialMedico());
     }
 
     public Odontograma traerOdontograma(Long id) {
@@ -149,5 +293,160 @@ public class ControladoraPersistencia {
 
     public void editarOdontograma(Odontograma odonto) throws Exception {
         odontograJPA.edit(odonto);
+        invalidarHistorial(odonto.getHistorialMedico());
+    }
+
+    public Odontograma traerUltimoOdontogramaPorPaciente(String dniPaciente) {
+        return odontograJPA.findUltimoOdontogramaPorPaciente(dniPaciente);
+    }
+
+    // ============== HORARIOS ==============
+
+    public List<Horario> traerHorarios() {
+        return horaJPA.findHorarioEntities();
+    }
+
+    // ============== ESTADÍSTICAS ==============
+
+    public int contarPacientes() {
+        return pacienteJPA.getPacienteCount();
+    }
+
+    public List<Object[]> traerPacientesRecientes(int cantidad) {
+        return pacienteJPA.findPacientesRecientes(cantidad);
+    }
+
+    public Map<Turno.EstadoTurno, Long> contarTurnosPorEstado() {
+        return turnoJPA.countTurnosPorEstado();
+    }
+
+    public List<Object[]> traerResumenTurnosPorFecha(LocalDate fecha) {
+        return turnoJPA.findResumenTurnosPorFecha(fecha);
+    }
+
+    public int contarHistorialesEntre(Date desde, Date hasta) {
+        return historialJPA.countHistorialesEntre(desde, hasta);
+    }
+
+    // ============== IMPORTACIÓN MASIVA ==============
+
+    public void importarLote(List<Object> entidades) {
+        importacionJPA.persistirLote(entidades);
+    }
+
+    public Set<String> traerDnisExistentes(Collection<String> dnis) {
+        return importacionJPA.findDnisExistentes(dnis);
+    }
+
+    // Los turnos y consultas importados no pasan por las colecciones inversas de Paciente
+    public void finalizarImportacion() {
+        emf.getCache().evict(Paciente.class);
+    }
+
+    // ============== ÍNDICES ==============
+
+    // Los índices de los que dependen las consultas; ver IndicesBaseDatos
+    public int crearIndicesFaltantes() {
+        return new IndicesBaseDatos(emf)
+                // Turnos por rango de fechas
+                .indice(Turno.class, "idx_turno_fecha")
+                // Agenda: turnos de un día ordenados por minuto de inicio
+                .indice(Turno.class, "idx_turno_fecha_minuto")
+                // Turnos e historia clínica de un paciente
+                .indice(Turno.class, "idx_turno_paciente_fecha")
+                .indice(HistorialMedico.class, "idx_historial_paciente_consulta")
+                // Historia clínica paginada por (fecha, id) y último odontograma del paciente
+                .indice(HistorialMedico.class, "idx_historial_paciente_fecha")
+                .indice(Odontograma.class, "idx_odontograma_historial")
+                // Búsqueda de pacientes por prefijo
+                .indice(Paciente.class, "idx_paciente_apellido_busq")
+                .indice(Paciente.class, "idx_paciente_nombre_busq")
+                // Conteos y listados del dashboard
+                .indice(Turno.class, "idx_turno_estado")
+                .indice(HistorialMedico.class, "idx_historial_fecha")
+                .indice(Paciente.class, "idx_paciente_created_at")
+                // Cambios desde ?since=
+                .indice(Turno.class, "idx_turno_updated_at")
+                .indice(Paciente.class, "idx_paciente_updated_at")
+                .indice(HistorialMedico.class, "idx_historial_updated_at")
+                .crearFaltantes();
+    }
+
+    // ============== SINCRONIZACIÓN (?since=) ==============
+
+    public List<PacienteListado> traerListadoPacientesModificadosDesde(Date desde) {
+        return pacienteJPA.findListadoPacientesModificadosDesde(desde);
+    }
+
+    public List<TurnoListado> traerListadoTurnosModificadosDesde(Date desde) {
+        return turnoJPA.findListadoTurnosModificadosDesde(desde);
+    }
+
+    public List<HistorialListado> traerListadoHistorialesModificadosDesde(Date desde) {
+        return historialJPA.findListadoHistorialesModificadosDesde(desde);
+    }
+
+    public List<String> traerBajasDesde(VersionesDatos.Coleccion coleccion, Date desde) {
+        return bajaJPA.findClavesEliminadasDesde(coleccion, desde);
+    }
+
+    public int purgarBajasAnteriores(Date limite) {
+        return bajaJPA.purgarAnteriores(limite);
+    }
+
+    // Filas anteriores a las columnas updated_at
+    public int completarFechasModificacion() {
+        return pacienteJPA.completarFechasModificacion()
+                + turnoJPA.completarFechasModificacion()
+                + historialJPA.completarFechasModificacion();
+    }
+
+    // ============== CACHÉ ==============
+
+    private void invalidarPaciente(Paciente paciente) {
+        if (paciente != null && paciente.getDniPaciente() != null) {
+            emf.getCache().evict(Paciente.class, paciente.getDniPaciente());
+        }
+    }
+
+    private void invalidarHistorial(HistorialMedico historial) {
+        if (historial != null && historial.getId() != null) {
+            emf.getCache().evict(HistorialMedico.class, historial.getId());
+        }
+    }
+
+    // Entradas en la caché compartida por entidad (sin costo: es el tamaño de cada mapa).
+    // Aciertos y fallos ("Counter:Cache*") solo si se activó el PerformanceMonitor (bd.perfilador)
+    public Map<String, Object> estadisticasCache() {
+        Map<String, Object> estadisticas = new TreeMap<>();
+        AbstractSession sesion = sesion();
+        if (sesion == null) {
+            return estadisticas;
+        }
+        IdentityMapManager mapas = sesion.getIdentityMapAccessorInstance().getIdentityMapManager();
+        for (ClassDescriptor descriptor : sesion.getDescriptors().values()) {
+            IdentityMap mapa = mapas.getIdentityMap(descriptor, true);
+            if (mapa != null) {
+                estadisticas.put("Entradas:" + descriptor.getAlias(), mapa.getSize());
+            }
+        }
+        SessionProfiler profiler = sesion.getProfiler();
+        if (profiler instanceof PerformanceMonitor) {
+            for (Map.Entry<String, Object> e : ((PerformanceMonitor) profiler).getOperationTimings().entrySet()) {
+                if (e.getKey().startsWith("Counter:Cache")) {
+                    estadisticas.put(e.getKey(), e.getValue());
+                }
+            }
+        }
+        return estadisticas;
+    }
+
+    // null si la unidad de persistencia no llegó a conectarse (getServerSession intenta el login)
+    private AbstractSession sesion() {
+        try {
+            return (AbstractSession) JpaHelper.getServerSession(emf);
+        } catch (RuntimeException ex) {
+            return null;
+        }
     }
 }
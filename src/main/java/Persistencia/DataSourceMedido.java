@@ -0,0 +1,187 @@
+package Persistencia;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
+
+/**
+ * Envoltorio del DataSource del pool que mide cuánto tarda cada
+ * getConnection() y cuántas conexiones están prestadas en este momento.
+ * Los tiempos de espera se guardan en un buffer circular para calcular
+ * percentiles sobre las últimas muestras.
+ */
+public class DataSourceMedido implements DataSource {
+
+    private static final int MUESTRAS = 1024;
+
+    private final DataSource delegado;
+    private final AtomicInteger activas = new AtomicInteger();
+    private final AtomicLong prestamos = new AtomicLong();
+    private final AtomicLong errores = new AtomicLong();
+    private final long[] esperasNanos = new long[MUESTRAS];
+    private int siguiente = 0;
+    private int cantidadMuestras = 0;
+
+    public DataSourceMedido(DataSource delegado) {
+        this.delegado = delegado;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            return prestar(delegado.getConnection(), inicio);
+        } catch (SQLException ex) {
+            errores.incrementAndGet();
+            throw ex;
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            return prestar(delegado.getConnection(username, password), inicio);
+        } catch (SQLException ex) {
+            errores.incrementAndGet();
+            throw ex;
+        }
+    }
+
+    private Connection prestar(Connection conexion, long inicio) {
+        registrarEspera(System.nanoTime() - inicio);
+        prestamos.incrementAndGet();
+        activas.incrementAndGet();
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[] { Connection.class }, new ConexionMedida(conexion));
+    }
+
+    private synchronized void registrarEspera(long nanos) {
+        esperasNanos[siguiente] = nanos;
+        siguiente = (siguiente + 1) % MUESTRAS;
+        if (cantidadMuestras < MUESTRAS) {
+            cantidadMuestras++;
+        }
+    }
+
+    // Percentil (0-100) de espera en milisegundos sobre las últimas muestras
+    public synchronized double percentilEsperaMs(double percentil) {
+        if (cantidadMuestras == 0) {
+            return 0;
+        }
+        long[] ordenadas = Arrays.copyOf(esperasNanos, cantidadMuestras);
+        Arrays.sort(ordenadas);
+        int idx = (int) Math.ceil(percentil / 100.0 * cantidadMuestras) - 1;
+        idx = Math.max(0, Math.min(idx, cantidadMuestras - 1));
+        return ordenadas[idx] / 1_000_000.0;
+    }
+
+    public int getActivas() {
+        return activas.get();
+    }
+
+    public long getPrestamos() {
+        return prestamos.get();
+    }
+
+    public long getErrores() {
+        return errores.get();
+    }
+
+    // El pool de Tomcat (org.apache.tomcat.jdbc.pool) expone getIdle()/getSize()/getMaxActive();
+    // no está en el classpath de compilación, así que se consulta por reflexión (-1 si no existe)
+    public int getIdle() {
+        return leerEntero("getIdle");
+    }
+
+    public int getTamanio() {
+        return leerEntero("getSize");
+    }
+
+    public int getMaximo() {
+        return leerEntero("getMaxActive");
+    }
+
+    private int leerEntero(String metodo) {
+        try {
+            Object valor = delegado.getClass().getMethod(metodo).invoke(delegado);
+            return valor instanceof Number ? ((Number) valor).intValue() : -1;
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            return -1;
+        }
+    }
+
+    // Descuenta la conexión de "activas" cuando EclipseLink la devuelve al pool
+    private class ConexionMedida implements InvocationHandler {
+
+        private final Connection conexion;
+        private boolean devuelta = false;
+
+        ConexionMedida(Connection conexion) {
+            this.conexion = conexion;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if ("close".equals(method.getName()) && !devuelta) {
+                devuelta = true;
+                activas.decrementAndGet();
+            }
+            try {
+                return method.invoke(conexion, args);
+            } catch (InvocationTargetException ex) {
+                throw ex.getCause();
+            }
+        }
+    }
+
+    // ============== DELEGACIÓN ==============
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return delegado.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        delegado.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        delegado.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return delegado.getLoginTimeout();
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return delegado.getParentLogger();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(delegado)) {
+            return iface.cast(delegado);
+        }
+        return delegado.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(delegado) || delegado.isWrapperFor(iface);
+    }
+}
@@ -2,14 +2,18 @@ package Persistencia;
 
 import Persistencia.exceptions.NonexistentEntityException;
 import java.io.Serializable;
+import java.util.Date;
 import java.util.List;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.Query;
 import javax.persistence.EntityNotFoundException;
+import javax.persistence.TemporalType;
 import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.criteria.Root;
+import logica.HistorialListado;
 import logica.HistorialMedico;
+import logica.VersionesDatos;
 
 public class HistorialMedicoJpaController implements Serializable {
 
@@ -77,6 +81,7 @@ public class HistorialMedicoJpaController implements Serializable {
                 throw new NonexistentEntityException("The historialMedico with id " + id + " no longer exists.", enfe);
             }
             em.remove(historialMedico);
+            BajaJpaController.registrar(em, VersionesDatos.Coleccion.HISTORIALES, id);
             em.getTransaction().commit();
         } finally {
             if (em != null) {
@@ -118,6 +123,72 @@ public class HistorialMedicoJpaController implements Serializable {
         }
     }
 
+    public List<HistorialMedico> findHistorialesPorPaciente(String dni) {
+        EntityManager em = getEntityManager();
+        try {
+            return em.createNamedQuery("HistorialMedico.findByPaciente", HistorialMedico.class)
+                    .setParameter("dni", dni)
+                    .getResultList();
+        } finally {
+            em.close();
+        }
+    }
+
+    public List<HistorialListado> findListadoHistorialesPorPaciente(String dni) {
+        EntityManager em = getEntityManager();
+        try {
+            return em.createNamedQuery("HistorialMedico.listarPorPaciente", HistorialListado.class)
+                    .setParameter("dni", dni)
+                    .getResultList();
+        } finally {
+            em.close();
+        }
+    }
+
+    // Consultas de todos los pacientes escritas desde el instante dado (idx_historial_updated_at)
+    public List<HistorialListado> findListadoHistorialesModificadosDesde(Date desde) {
+        EntityManager em = getEntityManager();
+        try {
+            return em.createNamedQuery("HistorialMedico.listarModificadosDesde", HistorialListado.class)
+                    .setParameter("desde", desde, TemporalType.TIMESTAMP)
+                    .getResultList();
+        } finally {
+            em.close();
+        }
+    }
+
+    // Consultas anteriores a la columna updated_at
+    public int completarFechasModificacion() {
+        EntityManager em = getEntityManager();
+        try {
+            em.getTransaction().begin();
+            int completados = em.createQuery("UPDATE HistorialMedico h SET h.updatedAt = :ahora "
+                    + "WHERE h.updatedAt IS NULL")
+                    .setParameter("ahora", new Date(), TemporalType.TIMESTAMP)
+                    .executeUpdate();
+            em.getTransaction().commit();
+            return completados;
+        } finally {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            em.close();
+        }
+    }
+
+    public int countHistorialesEntre(Date desde, Date hasta) {
+        EntityManager em = getEntityManager();
+        try {
+            return em.createQuery("SELECT COUNT(h) FROM HistorialMedico h "
+                    + "WHERE h.fecha_registro BETWEEN :desde AND :hasta", Long.class)
+                    .setParameter("desde", desde, TemporalType.DATE)
+                    .setParameter("hasta", hasta, TemporalType.DATE)
+                    .getSingleResult().intValue();
+        } finally {
+            em.close();
+        }
+    }
+
     public int getHistorialMedicoCount() {
         EntityManager em = getEntityManager();
         try {
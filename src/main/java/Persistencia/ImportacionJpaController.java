@@ -0,0 +1,89 @@
+package Persistencia;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import logica.HistorialMedico;
+import logica.Paciente;
+import logica.Turno;
+
+/**
+ * Escrituras de la importación masiva: cada lote va en una sola transacción
+ * (y, con eclipselink.jdbc.batch-writing, en pocos round-trips).
+ */
+public class ImportacionJpaController implements Serializable {
+
+    public ImportacionJpaController(EntityManagerFactory emf) {
+        this.emf = emf;
+    }
+
+    private EntityManagerFactory emf = null;
+
+    public EntityManager getEntityManager() {
+        return emf.createEntityManager();
+    }
+
+    // Persiste el lote en orden (pacientes antes que sus turnos/consultas)
+    public void persistirLote(List<Object> entidades) {
+        EntityManager em = null;
+        try {
+            em = getEntityManager();
+            em.getTransaction().begin();
+            for (Object entidad : entidades) {
+                em.persist(adjuntarPaciente(em, entidad));
+            }
+            em.getTransaction().commit();
+        } finally {
+            if (em != null) {
+                if (em.getTransaction().isActive()) {
+                    em.getTransaction().rollback();
+                }
+                em.close();
+            }
+        }
+    }
+
+    // Turnos y consultas llegan con un Paciente que solo tiene el DNI
+    private Object adjuntarPaciente(EntityManager em, Object entidad) {
+        if (entidad instanceof Turno) {
+            Turno t = (Turno) entidad;
+            if (t.getPacien() != null) {
+                t.setPacien(em.getReference(Paciente.class, t.getPacien().getDniPaciente()));
+            }
+        } else if (entidad instanceof HistorialMedico) {
+            HistorialMedico h = (HistorialMedico) entidad;
+            if (h.getPaciente() != null) {
+                h.setPaciente(em.getReference(Paciente.class, h.getPaciente().getDniPaciente()));
+            }
+        }
+        return entidad;
+    }
+
+    public Set<String> findDnisExistentes(Collection<String> dnis) {
+        Set<String> existentes = new HashSet<>();
+        if (dnis.isEmpty()) {
+            return existentes;
+        }
+        EntityManager em = getEntityManager();
+        try {
+            // IN en tramos para no armar sentencias enormes
+            List<String> lista = new ArrayList<>(dnis);
+            for (int i = 0; i < lista.size(); i += 500) {
+                List<String> tramo = lista.subList(i, Math.min(i + 500, lista.size()));
+                existentes.addAll(em.createQuery(
+                        "SELECT p.dni FROM Paciente p WHERE p.dni IN :dnis", String.class)
+                        .setParameter("dnis", tramo)
+                        .getResultList());
+            }
+            return existentes;
+        } finally {
+            em.close();
+        }
+    }
+
+}
@@ -0,0 +1,159 @@
+package Persistencia;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+import org.eclipse.persistence.jpa.JpaHelper;
+
+/**
+ * Crea al arrancar los índices de las entidades que falten en la base.
+ *
+ * create-or-extend-tables solo crea índices junto con una tabla nueva: a una
+ * tabla existente le agrega columnas pero no índices. Por eso cada índice del
+ * que dependa una consulta se registra acá. Se busca en
+ * information_schema.statistics y, si no está, se ejecuta el CREATE INDEX. Las
+ * columnas se leen de la anotación @Index (o @UniqueConstraint) de la entidad,
+ * así la definición queda en un solo lugar.
+ *
+ * Los índices reemplazados se registran con descartar(): se borran después de
+ * crear los demás, y solo si todos quedaron en la base.
+ */
+public class IndicesBaseDatos {
+
+    private static final Logger LOG = Logger.getLogger(IndicesBaseDatos.class.getName());
+
+    private final EntityManagerFactory emf;
+    private final List<Indice> indices = new ArrayList<>();
+    private final List<Indice> descartes = new ArrayList<>();
+
+    public IndicesBaseDatos(EntityManagerFactory emf) {
+        this.emf = emf;
+    }
+
+    // IllegalArgumentException si la entidad no declara un @Index con ese nombre
+    public IndicesBaseDatos indice(Class<?> entidad, String nombre) {
+        for (Index i : tabla(entidad).indexes()) {
+            if (i.name().equals(nombre)) {
+                indices.add(new Indice(entidad, nombre, i.columnList(), i.unique()));
+                return this;
+            }
+        }
+        throw new IllegalArgumentException(entidad.getSimpleName() + " no declara el índice " + nombre);
+    }
+
+    public IndicesBaseDatos unico(Class<?> entidad, String nombre) {
+        for (UniqueConstraint u : tabla(entidad).uniqueConstraints()) {
+            if (u.name().equals(nombre)) {
+                indices.add(new Indice(entidad, nombre, String.join(", ", u.columnNames()), true));
+                return this;
+            }
+        }
+        throw new IllegalArgumentException(entidad.getSimpleName() + " no declara la restricción " + nombre);
+    }
+
+    public IndicesBaseDatos descartar(Class<?> entidad, String nombre) {
+        descartes.add(new Indice(entidad, nombre, null, false));
+        return this;
+    }
+
+    // Cada índice por separado: si uno falla (por ejemplo, un único con duplicados) se sigue con el resto
+    public int crearFaltantes() {
+        int creados = 0;
+        boolean completos = true;
+        for (Indice indice : indices) {
+            EntityManager em = emf.createEntityManager();
+            try {
+                String tablaBd = tablaBd(indice);
+                if (existe(em, tablaBd, indice.nombre)) {
+                    continue;
+                }
+                em.getTransaction().begin();
+                em.createNativeQuery("CREATE " + (indice.unico ? "UNIQUE " : "") + "INDEX " + indice.nombre
+                        + " ON " + tablaBd + " (" + indice.columnas + ")").executeUpdate();
+                em.getTransaction().commit();
+                creados++;
+                LOG.log(Level.INFO, "Índice {0} creado en {1} ({2})",
+                        new Object[] { indice.nombre, tablaBd, indice.columnas });
+            } catch (RuntimeException ex) {
+                completos = false;
+                LOG.log(Level.SEVERE, "No se pudo crear el índice " + indice.nombre, ex);
+            } finally {
+                if (em.getTransaction().isActive()) {
+                    em.getTransaction().rollback();
+                }
+                em.close();
+            }
+        }
+        if (completos) {
+            descartarObsoletos();
+        } else if (!descartes.isEmpty()) {
+            LOG.log(Level.WARNING, "Faltan índices: se conservan los que iban a reemplazar");
+        }
+        return creados;
+    }
+
+    private void descartarObsoletos() {
+        for (Indice indice : descartes) {
+            EntityManager em = emf.createEntityManager();
+            try {
+                String tablaBd = tablaBd(indice);
+                if (!existe(em, tablaBd, indice.nombre)) {
+                    continue;
+                }
+                em.getTransaction().begin();
+                em.createNativeQuery("DROP INDEX " + indice.nombre + " ON " + tablaBd).executeUpdate();
+                em.getTransaction().commit();
+                LOG.log(Level.INFO, "Índice {0} borrado de {1}", new Object[] { indice.nombre, tablaBd });
+            } catch (RuntimeException ex) {
+                LOG.log(Level.SEVERE, "No se pudo borrar el índice " + indice.nombre, ex);
+            } finally {
+                if (em.getTransaction().isActive()) {
+                    em.getTransaction().rollback();
+                }
+                em.close();
+            }
+        }
+    }
+
+    private String tablaBd(Indice indice) {
+        return JpaHelper.getServerSession(emf).getDescriptor(indice.entidad).getTableName();
+    }
+
+    private static boolean existe(EntityManager em, String tabla, String nombre) {
+        Number cantidad = (Number) em.createNativeQuery("SELECT COUNT(*) FROM information_schema.statistics "
+                + "WHERE table_schema = DATABASE() AND UPPER(table_name) = UPPER(?) AND index_name = ?")
+                .setParameter(1, tabla)
+                .setParameter(2, nombre)
+                .getSingleResult();
+        return cantidad.longValue() > 0;
+    }
+
+    private static Table tabla(Class<?> entidad) {
+        Table tabla = entidad.getAnnotation(Table.class);
+        if (tabla == null) {
+            throw new IllegalArgumentException(entidad.getSimpleName() + " no tiene @Table");
+        }
+        return tabla;
+    }
+
+    private static class Indice {
+
+        final Class<?> entidad;
+        final String nombre;
+        final String columnas;
+        final boolean unico;
+
+        Indice(Class<?> entidad, String nombre, String columnas, boolean unico) {
+            this.entidad = entidad;
+            this.nombre = nombre;
+            this.columnas = columnas;
+            this.unico = unico;
+        }
+    }
+}
@@ -118,6 +118,19 @@ public class OdontogramaJpaController implements Serializable {
         }
     }
 
+    public Odontograma findUltimoOdontogramaPorPaciente(String dni) {
+        EntityManager em = getEntityManager();
+        try {
+            List<Odontograma> resultado = em.createNamedQuery("Odontograma.findUltimoByPaciente", Odontograma.class)
+                    .setParameter("dni", dni)
+                    .setMaxResults(1)
+                    .getResultList();
+            return resultado.isEmpty() ? null : resultado.get(0);
+        } finally {
+            em.close();
+        }
+    }
+
     public int getOdontogramaCount() {
         EntityManager em = getEntityManager();
         try {
@@ -9,13 +9,22 @@ import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.criteria.Root;
 import logica.Turno;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
+import javax.persistence.TemporalType;
+import javax.persistence.TypedQuery;
 import logica.Paciente;
+import logica.PacienteListado;
+import logica.VersionesDatos;
 
 public class PacienteJpaController implements Serializable {
 
+    // Proyección de los listados: sin antecedentes ni colecciones
+    private static final String SELECT_LISTADO = "SELECT NEW logica.PacienteListado(p.dni, p.nombre, p.apellido, "
+            + "p.telefono, p.direccion, p.fecha_nac, p.email, p.obraSocial) FROM Paciente p ";
+
     public PacienteJpaController(EntityManagerFactory emf) {
         this.emf = emf;
     }
@@ -131,12 +140,22 @@ public class PacienteJpaController implements Serializable {
             } catch (EntityNotFoundException enfe) {
                 throw new NonexistentEntityException("The paciente with id " + id + " no longer exists.", enfe);
             }
+            // Bajas de lo que se lleva la cascada, leído de la base y no de las listas en caché
+            for (Integer idTurno : em.createQuery("SELECT t.id_turno FROM Turno t WHERE t.pacien.dni = :dni",
+                    Integer.class).setParameter("dni", id).getResultList()) {
+                BajaJpaController.registrar(em, VersionesDatos.Coleccion.TURNOS, idTurno);
+            }
+            for (Long idHistorial : em.createQuery("SELECT h.id FROM HistorialMedico h WHERE h.paciente.dni = :dni",
+                    Long.class).setParameter("dni", id).getResultList()) {
+                BajaJpaController.registrar(em, VersionesDatos.Coleccion.HISTORIALES, idHistorial);
+            }
             List<Turno> listaTurno = paciente.getListaTurno();
             for (Turno listaTurnoTurno : listaTurno) {
                 listaTurnoTurno.setPacien(null);
                 listaTurnoTurno = em.merge(listaTurnoTurno);
             }
             em.remove(paciente);
+            BajaJpaController.registrar(em, VersionesDatos.Coleccion.PACIENTES, id);
             em.getTransaction().commit();
         } finally {
             if (em != null) {
@@ -178,6 +197,129 @@ public class PacienteJpaController implements Serializable {
         }
     }
 
+    // dni, nombre, apellido, teléfono y email de los últimos pacientes dados de alta
+    public List<Object[]> findPacientesRecientes(int maxResults) {
+        EntityManager em = getEntityManager();
+        try {
+            return em.createQuery("SELECT p.dni, p.nombre, p.apellido, p.telefono, p.email "
+                    + "FROM Paciente p ORDER BY p.createdAt DESC", Object[].class)
+                    .setMaxResults(maxResults)
+                    .getResultList();
+        } finally {
+            em.close();
+        }
+    }
+
+    public List<PacienteListado> findListadoPacientes() {
+        EntityManager em = getEntityManager();
+        try {
+            return em.createQuery(SELECT_LISTADO + "ORDER BY p.dni", PacienteListado.class).getResultList();
+        } finally {
+            em.close();
+        }
+    }
+
+    // Página de pacientes con DNI mayor al cursor (recorre la PK, sin OFFSET)
+    public List<PacienteListado> findListadoPacientesDespuesDe(String dni, int maxResults) {
+        EntityManager em = getEntityManager();
+        try {
+            TypedQuery<PacienteListado> q;
+            if (dni == null) {
+                q = em.createQuery(SELECT_LISTADO + "ORDER BY p.dni", PacienteListado.class);
+            } else {
+                q = em.createQuery(SELECT_LISTADO + "WHERE p.dni > :dni ORDER BY p.dni", PacienteListado.class)
+                        .setParameter("dni", dni);
+            }
+            return q.setMaxResults(maxResults).getResultList();
+        } finally {
+            em.close();
+        }
+    }
+
+    // Pacientes escritos desde el instante dado (idx_paciente_updated_at)
+    public List<PacienteListado> findListadoPacientesModificadosDesde(Date desde) {
+        EntityManager em = getEntityManager();
+        try {
+            return em.createQuery(SELECT_LISTADO + "WHERE p.updatedAt >= :desde ORDER BY p.updatedAt, p.dni",
+                    PacienteListado.class)
+                    .setParameter("desde", desde, TemporalType.TIMESTAMP)
+                    .getResultList();
+        } finally {
+            em.close();
+        }
+    }
+
+    // Cada término debe ser prefijo del nombre, del apellido o del DNI (columnas indexadas)
+    public List<PacienteListado> buscarPacientes(List<String> terminos, int maxResults) {
+        EntityManager em = getEntityManager();
+        try {
+            StringBuilder jpql = new StringBuilder(SELECT_LISTADO);
+            for (int i = 0; i < terminos.size(); i++) {
+                jpql.append(i == 0 ? "WHERE " : " AND ");
+                jpql.append("(p.apellidoBusqueda LIKE :t").append(i)
+                        .append(" OR p.nombreBusqueda LIKE :t").append(i)
+                        .append(" OR p.dni LIKE :t").append(i).append(")");
+            }
+            jpql.append(" ORDER BY p.apellidoBusqueda, p.nombreBusqueda");
+
+            TypedQuery<PacienteListado> q = em.createQuery(jpql.toString(), PacienteListado.class);
+            for (int i = 0; i < terminos.size(); i++) {
+                q.setParameter("t" + i, escaparLike(terminos.get(i)) + "%");
+            }
+            q.setMaxResults(maxResults);
+            return q.getResultList();
+        } finally {
+            em.close();
+        }
+    }
+
+    // Completa las columnas de búsqueda de pacientes creados antes de que existieran
+    public int normalizarPendientes() {
+        EntityManager em = getEntityManager();
+        try {
+            List<Paciente> pendientes = em.createQuery(
+                    "SELECT p FROM Paciente p WHERE p.nombreBusqueda IS NULL OR p.apellidoBusqueda IS NULL",
+                    Paciente.class).getResultList();
+            if (pendientes.isEmpty()) {
+                return 0;
+            }
+            em.getTransaction().begin();
+            for (Paciente p : pendientes) {
+                p.actualizarCamposBusqueda();
+            }
+            em.getTransaction().commit();
+            return pendientes.size();
+        } finally {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            em.close();
+        }
+    }
+
+    // Pacientes anteriores a la columna updated_at
+    public int completarFechasModificacion() {
+        EntityManager em = getEntityManager();
+        try {
+            em.getTransaction().begin();
+            int completados = em.createQuery("UPDATE Paciente p SET p.updatedAt = :ahora "
+                    + "WHERE p.updatedAt IS NULL")
+                    .setParameter("ahora", new Date(), TemporalType.TIMESTAMP)
+                    .executeUpdate();
+            em.getTransaction().commit();
+            return completados;
+        } finally {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            em.close();
+        }
+    }
+
+    private static String escaparLike(String termino) {
+        return termino.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
     public int getPacienteCount() {
         EntityManager em = getEntityManager();
         try {
@@ -1,17 +1,32 @@
 package Persistencia;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.Persistence;
 
 public class Persistencia {
 
-    private static EntityManagerFactory emf = null;
+    // Una fábrica por unidad de persistencia
+    private static final Map<String, EntityManagerFactory> emfs = new HashMap<>();
 
-    public static synchronized EntityManagerFactory createEntityManagerFactory(String pu) {
-        if (emf == null) {
+    // La contraseña de la base está solo acá, como propiedad del servidor (catalina.properties o -D):
+    // la usan el pool JNDI de context.xml (${consultorio.db.password}) y el pool interno de EclipseLink
+    public static final String PROPIEDAD_PASSWORD = "consultorio.db.password";
+
+    public static EntityManagerFactory createEntityManagerFactory(String pu) {
+        return createEntityManagerFactory(pu, Collections.<String, Object>emptyMap());
+    }
+
+    // Las propiedades pisan las de persistence.xml (p. ej. javax.persistence.nonJtaDataSource)
+    public static synchronized EntityManagerFactory createEntityManagerFactory(String pu, Map<String, Object> propiedades) {
+        EntityManagerFactory emf = emfs.get(pu);
+        if (emf == null || !emf.isOpen()) {
             System.out.println("Iniciando creación de EntityManagerFactory para: " + pu);
             try {
-                emf = Persistence.createEntityManagerFactory(pu);
+                emf = Persistence.createEntityManagerFactory(pu, conPassword(propiedades));
+                emfs.put(pu, emf);
                 System.out.println("EntityManagerFactory CREADO EXITOSAMENTE");
             } catch (Exception e) {
                 System.out.println("ERROR AL CREAR EntityManagerFactory: " + e.getMessage());
@@ -22,4 +37,28 @@ public class Persistencia {
         return emf;
     }
 
+    // Con el DataSource JNDI las credenciales ya las tiene el pool
+    private static Map<String, Object> conPassword(Map<String, Object> propiedades) {
+        if (propiedades.containsKey("javax.persistence.nonJtaDataSource")
+                || propiedades.containsKey("javax.persistence.jdbc.password")) {
+            return propiedades;
+        }
+        String password = System.getProperty(PROPIEDAD_PASSWORD, System.getenv("CONSULTORIO_DB_PASSWORD"));
+        if (password == null) {
+            System.out.println("Falta la propiedad " + PROPIEDAD_PASSWORD + ": se conecta sin contraseña");
+            return propiedades;
+        }
+        Map<String, Object> conPassword = new HashMap<>(propiedades);
+        conPassword.put("javax.persistence.jdbc.password", password);
+        return conPassword;
+    }
+
+    public static synchronized void closeEntityManagerFactory(String pu) {
+        EntityManagerFactory emf = emfs.remove(pu);
+        if (emf != null && emf.isOpen()) {
+            emf.close();
+            System.out.println("EntityManagerFactory CERRADO para: " + pu);
+        }
+    }
+
 }
@@ -1,19 +1,39 @@
 package Persistencia;
 
+import Persistencia.exceptions.ConflictoTurnoException;
 import Persistencia.exceptions.NonexistentEntityException;
 import java.io.Serializable;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
+import javax.persistence.LockModeType;
 import javax.persistence.Query;
+import javax.persistence.TemporalType;
 import javax.persistence.EntityNotFoundException;
+import javax.persistence.TypedQuery;
 import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.criteria.Root;
 import logica.Paciente;
 import logica.Turno;
+import logica.TurnoListado;
+import logica.VersionesDatos;
 
 public class TurnoJpaController implements Serializable {
 
+    private static final Logger LOG = Logger.getLogger(TurnoJpaController.class.getName());
+    // Filas u horarios por transacción en las migraciones de arranque
+    private static final int LOTE_MIGRACION = 500;
+
     public TurnoJpaController(EntityManagerFactory emf) {
         this.emf = emf;
     }
@@ -28,51 +48,53 @@ public class TurnoJpaController implements Serializable {
         emf = Persistencia.createEntityManagerFactory("ConsulOdontPU");
     }
 
-    public void create(Turno turno) {
+    // Solo se escribe el lado dueño (id_paciente): Paciente.listaTurno no se carga ni se
+    // modifica; ControladoraPersistencia quita al paciente de la caché compartida
+    public void create(Turno turno) throws ConflictoTurnoException {
         EntityManager em = null;
         try {
             em = getEntityManager();
             em.getTransaction().begin();
             Paciente pacien = turno.getPacien();
             if (pacien != null) {
-                pacien = em.getReference(pacien.getClass(), pacien.getDniPaciente());
-                turno.setPacien(pacien);
+                turno.setPacien(em.getReference(Paciente.class, pacien.getDniPaciente()));
             }
+            verificarSolapamiento(em, turno);
             em.persist(turno);
-            if (pacien != null) {
-                pacien.getListaTurno().add(turno);
-                pacien = em.merge(pacien);
-            }
             em.getTransaction().commit();
+        } catch (RuntimeException ex) {
+            throw traducirConflicto(ex);
         } finally {
             if (em != null) {
+                if (em.getTransaction().isActive()) {
+                    em.getTransaction().rollback();
+                }
                 em.close();
             }
         }
     }
 
-    public void edit(Turno turno) throws NonexistentEntityException, Exception {
+    // Con la versión que trae el turno: si otro lo guardó antes, falla con MODIFICADO
+    public void edit(Turno turno) throws NonexistentEntityException, ConflictoTurnoException, Exception {
         EntityManager em = null;
         try {
             em = getEntityManager();
             em.getTransaction().begin();
-            Turno persistentTurno = em.find(Turno.class, turno.getId_turno());
-            Paciente pacienOld = persistentTurno.getPacien();
+            if (em.find(Turno.class, turno.getId_turno()) == null) {
+                throw new NonexistentEntityException("The turno with id " + turno.getId_turno() + " no longer exists.");
+            }
             Paciente pacienNew = turno.getPacien();
             if (pacienNew != null) {
-                pacienNew = em.getReference(pacienNew.getClass(), pacienNew.getDniPaciente());
-                turno.setPacien(pacienNew);
+                turno.setPacien(em.getReference(Paciente.class, pacienNew.getDniPaciente()));
             }
+            verificarSolapamiento(em, turno);
             turno = em.merge(turno);
-            if (pacienOld != null && !pacienOld.equals(pacienNew)) {
-                pacienOld.getListaTurno().remove(turno);
-                pacienOld = em.merge(pacienOld);
-            }
-            if (pacienNew != null && !pacienNew.equals(pacienOld)) {
-                pacienNew.getListaTurno().add(turno);
-                pacienNew = em.merge(pacienNew);
-            }
             em.getTransaction().commit();
+        } catch (RuntimeException ex) {
+            // PersistenceException al commit, o la OptimisticLockException de EclipseLink en el merge
+            throw traducirConflicto(ex);
+        } catch (ConflictoTurnoException ex) {
+            throw ex;
         } catch (Exception ex) {
             String msg = ex.getLocalizedMessage();
             if (msg == null || msg.length() == 0) {
@@ -84,6 +106,9 @@ public class TurnoJpaController implements Serializable {
             throw ex;
         } finally {
             if (em != null) {
+                if (em.getTransaction().isActive()) {
+                    em.getTransaction().rollback();
+                }
                 em.close();
             }
         }
@@ -101,12 +126,8 @@ public class TurnoJpaController implements Serializable {
             } catch (EntityNotFoundException enfe) {
                 throw new NonexistentEntityException("The turno with id " + id + " no longer exists.", enfe);
             }
-            Paciente pacien = turno.getPacien();
-            if (pacien != null) {
-                pacien.getListaTurno().remove(turno);
-                pacien = em.merge(pacien);
-            }
             em.remove(turno);
+            BajaJpaController.registrar(em, VersionesDatos.Coleccion.TURNOS, id);
             em.getTransaction().commit();
         } finally {
             if (em != null) {
@@ -115,6 +136,188 @@ public class TurnoJpaController implements Serializable {
         }
     }
 
+    // Dentro de la transacción de la escritura. La lectura bloquea los turnos del día y, en
+    // InnoDB, el tramo de ese día en idx_turno_fecha: un alta simultánea para el mismo día
+    // espera a que esta termine y ve el turno nuevo
+    private static void verificarSolapamiento(EntityManager em, Turno turno) throws ConflictoTurnoException {
+        if (!Boolean.TRUE.equals(turno.getOcupaHorario()) || turno.getMinutoInicio() == null
+                || turno.getFecha_Turno() == null) {
+            return;
+        }
+        List<Turno> delDia = em.createQuery("SELECT t FROM Turno t "
+                + "WHERE t.fecha_Turno = :fecha AND t.ocupaHorario = TRUE AND t.id_turno <> :id", Turno.class)
+                .setParameter("fecha", turno.getFecha_Turno())
+                .setParameter("id", turno.getId_turno())
+                .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                .getResultList();
+        for (Turno otro : delDia) {
+            if (turno.seSolapaCon(otro)) {
+                throw new ConflictoTurnoException(ConflictoTurnoException.Tipo.HORARIO_OCUPADO,
+                        "El horario se superpone con el turno de las " + otro.getHora_Turno(), null);
+            }
+        }
+    }
+
+    // Conflictos de escritura concurrente: versión vencida o horario ya tomado.
+    // Cualquier otro error se propaga tal cual
+    private static ConflictoTurnoException traducirConflicto(RuntimeException ex) {
+        for (Throwable c = ex; c != null; c = c.getCause()) {
+            if (c instanceof javax.persistence.OptimisticLockException
+                    || c instanceof org.eclipse.persistence.exceptions.OptimisticLockException) {
+                return new ConflictoTurnoException(ConflictoTurnoException.Tipo.MODIFICADO,
+                        "El turno fue modificado por otro usuario", ex);
+            }
+            if (c instanceof SQLException && c.getMessage() != null
+                    && c.getMessage().contains(Turno.RESTRICCION_HORARIO)) {
+                return new ConflictoTurnoException(ConflictoTurnoException.Tipo.HORARIO_OCUPADO,
+                        "Ya hay un turno en ese horario", ex);
+            }
+        }
+        throw ex;
+    }
+
+    // Turnos anteriores a minuto_inicio: se completa a partir del texto de hora_Turno, de a
+    // LOTE_MIGRACION filas por transacción. Solo se escribe minuto_inicio: hora_Turno queda
+    // como estaba, y marcarHorariosOcupados agrupa por minuto, así "9:00" y "09:00" chocan
+    public int completarMinutosPendientes() {
+        EntityManager em = getEntityManager();
+        try {
+            int completados = 0;
+            int ultimoId = 0;
+            while (true) {
+                List<Object[]> pagina = em.createQuery("SELECT t.id_turno, t.hora_Turno FROM Turno t "
+                        + "WHERE t.minutoInicio IS NULL AND t.hora_Turno IS NOT NULL AND t.id_turno > :ultimo "
+                        + "ORDER BY t.id_turno", Object[].class)
+                        .setParameter("ultimo", ultimoId)
+                        .setMaxResults(LOTE_MIGRACION)
+                        .getResultList();
+                if (pagina.isEmpty()) {
+                    return completados;
+                }
+                // Una UPDATE por cada minuto distinto de la página
+                Map<Integer, List<Integer>> idsPorMinuto = new HashMap<>();
+                for (Object[] fila : pagina) {
+                    int id = (Integer) fila[0];
+                    ultimoId = id;
+                    try {
+                        idsPorMinuto.computeIfAbsent(Turno.minutoDe((String) fila[1]), m -> new ArrayList<>()).add(id);
+                    } catch (IllegalArgumentException e) {
+                        // Queda sin minuto y fuera de la agenda hasta que se edite
+                        LOG.log(Level.WARNING, "Turno {0} con hora ilegible \"{1}\": queda sin minuto de inicio",
+                                new Object[] { id, fila[1] });
+                    }
+                }
+                em.getTransaction().begin();
+                for (Map.Entry<Integer, List<Integer>> e : idsPorMinuto.entrySet()) {
+                    // Un UPDATE masivo no pasa por @PreUpdate: updated_at se pone a mano para ?since=,
+                    // con el reloj de la JVM como el resto de las fechas de modificación y las bajas
+                    completados += em.createQuery("UPDATE Turno t "
+                            + "SET t.minutoInicio = :minuto, t.updatedAt = :ahora "
+                            + "WHERE t.id_turno IN :ids AND t.minutoInicio IS NULL")
+                            .setParameter("minuto", e.getKey())
+                            .setParameter("ahora", new Date(), TemporalType.TIMESTAMP)
+                            .setParameter("ids", e.getValue())
+                            .executeUpdate();
+                }
+                em.getTransaction().commit();
+            }
+        } finally {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            em.close();
+        }
+    }
+
+    // Turnos anteriores a la columna updated_at: sin fecha no los encontraría ningún ?since=
+    public int completarFechasModificacion() {
+        EntityManager em = getEntityManager();
+        try {
+            em.getTransaction().begin();
+            int completados = em.createQuery("UPDATE Turno t SET t.updatedAt = :ahora "
+                    + "WHERE t.updatedAt IS NULL")
+                    .setParameter("ahora", new Date(), TemporalType.TIMESTAMP)
+                    .executeUpdate();
+            em.getTransaction().commit();
+            return completados;
+        } finally {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            em.close();
+        }
+    }
+
+    // Turnos anteriores a la columna ocupa_horario: se marcan para que cuenten en uk_turno_minuto.
+    // Se trabaja por horario (fecha, minuto de inicio; corre después de completarMinutosPendientes):
+    // donde ya hay dos turnos activos no se marca ninguno y se avisa, para que un doble turno
+    // heredado no impida marcar el resto
+    public int marcarHorariosOcupados() {
+        EntityManager em = getEntityManager();
+        try {
+            List<Object[]> horarios = em.createQuery("SELECT t.fecha_Turno, t.minutoInicio, COUNT(t) FROM Turno t "
+                    + "WHERE t.ocupaHorario = TRUE "
+                    + "OR (t.ocupaHorario IS NULL AND (t.estado IS NULL OR t.estado <> :cancelado)) "
+                    + "GROUP BY t.fecha_Turno, t.minutoInicio "
+                    + "HAVING SUM(CASE WHEN t.ocupaHorario IS NULL THEN 1 ELSE 0 END) > 0", Object[].class)
+                    .setParameter("cancelado", Turno.EstadoTurno.CANCELADO)
+                    .getResultList();
+            int marcados = 0;
+            int enLote = 0;
+            em.getTransaction().begin();
+            for (Object[] h : horarios) {
+                LocalDate fecha = (LocalDate) h[0];
+                Integer minuto = (Integer) h[1];
+                // Sin minuto (sin hora o ilegible) no cuenta en la restricción: NULL no se repite en un índice único
+                if (minuto != null && ((Number) h[2]).longValue() > 1) {
+                    LOG.log(Level.WARNING, "Horario {0} {1} con {2} turnos activos: no se marca, resolver a mano",
+                            new Object[] { fecha, LocalTime.ofSecondOfDay(minuto * 60L), h[2] });
+                    continue;
+                }
+                Query marcar = em.createQuery("UPDATE Turno t "
+                        + "SET t.ocupaHorario = TRUE, t.updatedAt = :ahora "
+                        + "WHERE t.fecha_Turno = :fecha AND "
+                        + (minuto != null ? "t.minutoInicio = :minuto " : "t.minutoInicio IS NULL ")
+                        + "AND t.ocupaHorario IS NULL AND (t.estado IS NULL OR t.estado <> :cancelado)")
+                        .setParameter("fecha", fecha)
+                        .setParameter("ahora", new Date(), TemporalType.TIMESTAMP)
+                        .setParameter("cancelado", Turno.EstadoTurno.CANCELADO);
+                if (minuto != null) {
+                    marcar.setParameter("minuto", minuto);
+                }
+                marcados += marcar.executeUpdate();
+                if (++enLote == LOTE_MIGRACION) {
+                    em.getTransaction().commit();
+                    em.getTransaction().begin();
+                    enLote = 0;
+                }
+            }
+            em.getTransaction().commit();
+            return marcados;
+        } finally {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            em.close();
+        }
+    }
+
+    // Turnos escritos desde el instante dado, más los de pacientes modificados desde entonces
+    public List<TurnoListado> findListadoTurnosModificadosDesde(Date desde) {
+        EntityManager em = getEntityManager();
+        try {
+            List<TurnoListado> modificados = em.createNamedQuery("Turno.listarModificadosDesde", TurnoListado.class)
+                    .setParameter("desde", desde, TemporalType.TIMESTAMP)
+                    .getResultList();
+            modificados.addAll(em.createNamedQuery("Turno.listarDePacientesModificadosDesde", TurnoListado.class)
+                    .setParameter("desde", desde, TemporalType.TIMESTAMP)
+                    .getResultList());
+            return modificados;
+        } finally {
+            em.close();
+        }
+    }
+
     public List<Turno> findTurnoEntities() {
         return findTurnoEntities(true, -1, -1);
     }
@@ -148,6 +351,116 @@ public class TurnoJpaController implements Serializable {
         }
     }
 
+    public List<Turno> findTurnosPorRangoFecha(LocalDate desde, LocalDate hasta) {
+        EntityManager em = getEntityManager();
+        try {
+            return em.createNamedQuery("Turno.findByRangoFecha", Turno.class)
+                    .setParameter("desde", desde)
+                    .setParameter("hasta", hasta)
+                    .getResultList();
+        } finally {
+            em.close();
+        }
+    }
+
+    public List<TurnoListado> findListadoTurnos() {
+        EntityManager em = getEntityManager();
+        try {
+            return em.createNamedQuery("Turno.listar", TurnoListado.class).getResultList();
+        } finally {
+            em.close();
+        }
+    }
+
+    public List<TurnoListado> findListadoTurnosPorRangoFecha(LocalDate desde, LocalDate hasta) {
+        EntityManager em = getEntityManager();
+        try {
+            return em.createNamedQuery("Turno.listarPorRangoFecha", TurnoListado.class)
+                    .setParameter("desde", desde)
+                    .setParameter("hasta", hasta)
+                    .getResultList();
+        } finally {
+            em.close();
+        }
+    }
+
+    // Página de turnos posterior al cursor (fecha, id); sin cursor, la primera página
+    public List<TurnoListado> findListadoTurnosDespuesDe(LocalDate fecha, Integer id, int maxResults) {
+        EntityManager em = getEntityManager();
+        try {
+            TypedQuery<TurnoListado> q;
+            if (fecha == null || id == null) {
+                q = em.createNamedQuery("Turno.listarPrimeraPagina", TurnoListado.class);
+            } else {
+                q = em.createNamedQuery("Turno.listarPaginaDespuesDe", TurnoListado.class)
+                        .setParameter("fecha", fecha)
+                        .setParameter("id", id);
+            }
+            return q.setMaxResults(maxResults).getResultList();
+        } finally {
+            em.close();
+        }
+    }
+
+    public List<Turno> findTurnosPorPaciente(String dni) {
+        EntityManager em = getEntityManager();
+        try {
+            return em.createNamedQuery("Turno.findByPaciente", Turno.class)
+                    .setParameter("dni", dni)
+                    .getResultList();
+        } finally {
+            em.close();
+        }
+    }
+
+    public Map<Turno.EstadoTurno, Long> countTurnosPorEstado() {
+        EntityManager em = getEntityManager();
+        try {
+            Map<Turno.EstadoTurno, Long> conteo = new EnumMap<>(Turno.EstadoTurno.class);
+            List<Object[]> filas = em.createQuery(
+                    "SELECT t.estado, COUNT(t) FROM Turno t GROUP BY t.estado", Object[].class)
+                    .getResultList();
+            for (Object[] fila : filas) {
+                if (fila[0] != null) {
+                    conteo.put((Turno.EstadoTurno) fila[0], (Long) fila[1]);
+                }
+            }
+            return conteo;
+        } finally {
+            em.close();
+        }
+    }
+
+    // fecha, minuto de inicio y duración de los turnos que ocupan su horario (no cancelados)
+    public List<Object[]> findHorariosOcupados(LocalDate desde, LocalDate hasta) {
+        EntityManager em = getEntityManager();
+        try {
+            return em.createQuery("SELECT t.fecha_Turno, t.minutoInicio, t.duracionMinutos FROM Turno t "
+                    + "WHERE t.fecha_Turno BETWEEN :desde AND :hasta "
+                    + "AND (t.estado IS NULL OR t.estado <> :cancelado)", Object[].class)
+                    .setParameter("desde", desde)
+                    .setParameter("hasta", hasta)
+                    .setParameter("cancelado", Turno.EstadoTurno.CANCELADO)
+                    .getResultList();
+        } finally {
+            em.close();
+        }
+    }
+
+    // id, hora, nombre y apellido del paciente, afección, estado y DNI; sin cargar entidades
+    public List<Object[]> findResumenTurnosPorFecha(LocalDate fecha) {
+        EntityManager em = getEntityManager();
+        try {
+            return em.createQuery("SELECT t.id_turno, t.hora_Turno, p.nombre, p.apellido, t.afeccion, t.estado, p.dni, "
+                    + "t.minutoInicio FROM Turno t LEFT JOIN t.pacien p "
+                    + "WHERE t.fecha_Turno = :fecha ORDER BY t.minutoInicio", Object[].class)
+                    .setParameter("fecha", fecha)
+                    .getResultList();
+        } finally {
+            em.close();
+        }
+    }
+
     public int getTurnoCount() {
         EntityManager em = getEntityManager();
         try {
@@ -0,0 +1,21 @@
+package Persistencia.exceptions;
+
+// Escritura de un turno rechazada por otra escritura concurrente (se responde 409)
+public class ConflictoTurnoException extends Exception {
+
+    public enum Tipo {
+        MODIFICADO,      // @Version: el turno cambió desde que el cliente lo leyó
+        HORARIO_OCUPADO  // uk_turno_minuto o un turno activo que se superpone en ese día
+    }
+
+    private final Tipo tipo;
+
+    public ConflictoTurnoException(Tipo tipo, String message, Throwable cause) {
+        super(message, cause);
+        this.tipo = tipo;
+    }
+
+    public Tipo getTipo() {
+        return tipo;
+    }
+}
@@ -0,0 +1,294 @@
+package logica;
+
+import Persistencia.ControladoraPersistencia;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Horarios libres para sacar turnos. Cada día se representa con un BitSet de
+ * bloques de MINUTOS_BLOQUE minutos (288 bits): la apertura sale de los
+ * Horario (se aplican todos los días) y la ocupación de los turnos activos
+ * (minuto_inicio y duracion_minutos).
+ *
+ * Los días consultados quedan en memoria; la Controladora los actualiza en
+ * cada alta de turno y descarta el día afectado en ediciones y bajas (dos
+ * turnos pueden solaparse, así que liberar bits a ciegas no es seguro).
+ */
+public class AgendaDisponibilidad {
+
+    public static final int MINUTOS_BLOQUE = 5;
+    public static final int DURACION_TURNO_MINUTOS = Turno.DURACION_DEFAULT_MINUTOS;
+    public static final int MAX_DIAS_BUSQUEDA = 180;
+
+    private static final int BLOQUES_DIA = 24 * 60 / MINUTOS_BLOQUE;
+    private static final int DIAS_EN_MEMORIA = 400;
+    private static final int DIAS_POR_CARGA = 31;
+
+    // Sin Horario cargados en la base se usa esta jornada
+    private static final LocalTime APERTURA_DEFAULT = LocalTime.of(8, 0);
+    private static final LocalTime CIERRE_DEFAULT = LocalTime.of(20, 0);
+
+    private final ControladoraPersistencia controlPersis;
+
+    // apertura, ocupacion y cambios se leen y escriben con el monitor de la instancia
+    private BitSet apertura;
+    private final Map<LocalDate, BitSet> ocupacion = new LinkedHashMap<LocalDate, BitSet>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<LocalDate, BitSet> eldest) {
+            return size() > DIAS_EN_MEMORIA;
+        }
+    };
+    // Avisos de turnos e invalidaciones; ver leer()
+    private long cambios;
+
+    public AgendaDisponibilidad(ControladoraPersistencia controlPersis) {
+        this.controlPersis = controlPersis;
+    }
+
+    // ============== LECTURA ==============
+
+    // Inicios posibles para un turno de la duración pedida, día por día, sin solaparse entre sí
+    public List<HuecoLibre> huecosLibres(LocalDate desde, LocalDate hasta, int duracionMinutos) {
+        List<HuecoLibre> huecos = new ArrayList<>();
+        int bloques = bloquesPara(duracionMinutos);
+        Tramo tramo = leer(desde, hasta);
+        for (LocalDate dia = desde; !dia.isAfter(hasta); dia = dia.plusDays(1)) {
+            tramo.agregarHuecos(dia, bloques, huecos, Integer.MAX_VALUE);
+        }
+        return huecos;
+    }
+
+    // Primer horario libre desde la fecha indicada; null si no hay en MAX_DIAS_BUSQUEDA días
+    public HuecoLibre proximoHueco(LocalDate desde, int duracionMinutos) {
+        int bloques = bloquesPara(duracionMinutos);
+        List<HuecoLibre> encontrado = new ArrayList<>(1);
+        LocalDate limite = desde.plusDays(MAX_DIAS_BUSQUEDA - 1);
+        for (LocalDate inicio = desde; !inicio.isAfter(limite); inicio = inicio.plusDays(DIAS_POR_CARGA)) {
+            LocalDate fin = inicio.plusDays(DIAS_POR_CARGA - 1);
+            if (fin.isAfter(limite)) {
+                fin = limite;
+            }
+            Tramo tramo = leer(inicio, fin);
+            for (LocalDate dia = inicio; !dia.isAfter(fin); dia = dia.plusDays(1)) {
+                tramo.agregarHuecos(dia, bloques, encontrado, 1);
+                if (!encontrado.isEmpty()) {
+                    return encontrado.get(0);
+                }
+            }
+        }
+        return null;
+    }
+
+    // Fuerza la recarga de apertura y ocupación en la próxima lectura
+    public synchronized void invalidar() {
+        apertura = null;
+        ocupacion.clear();
+        cambios++;
+    }
+
+    // Copia de apertura y ocupación del rango. Lo que falta se lee de la base fuera del
+    // monitor, así una lectura lenta no frena a las demás ni a los avisos de turnos. Se
+    // publica después, salvo que mientras tanto haya cambiado algún turno: esa lectura
+    // puede no incluirlo y solo sirve para la respuesta en curso
+    private Tramo leer(LocalDate desde, LocalDate hasta) {
+        Tramo tramo = new Tramo();
+        LocalDate primero = null;
+        LocalDate ultimo = null;
+        long cambiosAlLeer;
+        synchronized (this) {
+            cambiosAlLeer = cambios;
+            tramo.apertura = apertura;
+            for (LocalDate dia = desde; !dia.isAfter(hasta); dia = dia.plusDays(1)) {
+                BitSet ocupado = ocupacion.get(dia);
+                if (ocupado != null) {
+                    tramo.ocupacion.put(dia, (BitSet) ocupado.clone());
+                } else {
+                    if (primero == null) {
+                        primero = dia;
+                    }
+                    ultimo = dia;
+                }
+            }
+        }
+
+        boolean aperturaLeida = tramo.apertura == null;
+        if (aperturaLeida) {
+            tramo.apertura = cargarApertura();
+        }
+        Map<LocalDate, BitSet> cargados = new LinkedHashMap<>();
+        if (primero != null) {
+            // Una sola consulta para todo el tramo que falta; los días sin turnos quedan vacíos
+            for (LocalDate dia = primero; !dia.isAfter(ultimo); dia = dia.plusDays(1)) {
+                cargados.put(dia, new BitSet(BLOQUES_DIA));
+            }
+            for (Object[] fila : controlPersis.traerHorariosOcupados(primero, ultimo)) {
+                BitSet dia = cargados.get((LocalDate) fila[0]);
+                if (dia != null) {
+                    marcar(dia, (Integer) fila[1], ((Number) fila[2]).intValue());
+                }
+            }
+        }
+
+        synchronized (this) {
+            if (cambios == cambiosAlLeer) {
+                if (aperturaLeida) {
+                    apertura = tramo.apertura;
+                }
+                for (Map.Entry<LocalDate, BitSet> e : cargados.entrySet()) {
+                    if (!ocupacion.containsKey(e.getKey())) {
+                        ocupacion.put(e.getKey(), (BitSet) e.getValue().clone());
+                    }
+                }
+            }
+        }
+        for (Map.Entry<LocalDate, BitSet> e : cargados.entrySet()) {
+            tramo.ocupacion.putIfAbsent(e.getKey(), e.getValue());
+        }
+        return tramo;
+    }
+
+    private BitSet cargarApertura() {
+        BitSet bits = new BitSet(BLOQUES_DIA);
+        for (Horario h : controlPersis.traerHorarios()) {
+            LocalTime inicio = parsearHora(h.getHorario_inicio());
+            LocalTime fin = parsearHora(h.getHorario_fin());
+            if (inicio != null && fin != null && inicio.isBefore(fin)) {
+                bits.set(bloqueDe(inicio), bloqueDe(fin));
+            }
+        }
+        if (bits.isEmpty()) {
+            bits.set(bloqueDe(APERTURA_DEFAULT), bloqueDe(CIERRE_DEFAULT));
+        }
+        return bits;
+    }
+
+    // ============== TURNOS ==============
+
+    public synchronized void turnoCreado(Turno t) {
+        if (t.getFecha_Turno() == null || !Boolean.TRUE.equals(t.getOcupaHorario())) {
+            return;
+        }
+        cambios++;
+        BitSet dia = ocupacion.get(t.getFecha_Turno());
+        if (dia != null) {
+            marcar(dia, t.getMinutoInicio(), t.getDuracionMinutos());
+        }
+    }
+
+    public synchronized void turnoEditado(Turno anterior, Turno nuevo) {
+        turnoEliminado(anterior);
+        // El día del turno nuevo puede haberse descartado recién: se marca solo si sigue cargado
+        turnoCreado(nuevo);
+    }
+
+    public synchronized void turnoEliminado(Turno anterior) {
+        if (anterior != null && anterior.getFecha_Turno() != null) {
+            cambios++;
+            ocupacion.remove(anterior.getFecha_Turno());
+        }
+    }
+
+    private static void marcar(BitSet dia, Integer minutoInicio, int duracionMinutos) {
+        if (minutoInicio != null) {
+            int desde = minutoInicio / MINUTOS_BLOQUE;
+            dia.set(desde, Math.min(BLOQUES_DIA, desde + bloquesPara(duracionMinutos)));
+        }
+    }
+
+    // ============== CONVERSIONES ==============
+
+    private static int bloquesPara(int minutos) {
+        return Math.max(1, (minutos + MINUTOS_BLOQUE - 1) / MINUTOS_BLOQUE);
+    }
+
+    private static int bloqueDe(LocalTime hora) {
+        return hora.toSecondOfDay() / (MINUTOS_BLOQUE * 60);
+    }
+
+    private static LocalTime horaDeBloque(int bloque) {
+        return bloque >= BLOQUES_DIA ? LocalTime.MAX : LocalTime.ofSecondOfDay(bloque * MINUTOS_BLOQUE * 60L);
+    }
+
+    private static LocalTime parsearHora(String hora) {
+        if (hora == null || hora.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return LocalTime.parse(hora.trim());
+        } catch (DateTimeParseException e) {
+            Logger.getLogger(AgendaDisponibilidad.class.getName()).log(Level.WARNING, "Hora inválida: {0}", hora);
+            return null;
+        }
+    }
+
+    /**
+     * Apertura y ocupación de un rango de días tal como estaban al leerlos; se
+     * recorre sin el monitor de la agenda.
+     */
+    private static class Tramo {
+
+        BitSet apertura;
+        final Map<LocalDate, BitSet> ocupacion = new HashMap<>();
+
+        void agregarHuecos(LocalDate dia, int bloques, List<HuecoLibre> huecos, int maximo) {
+            LocalDate hoy = LocalDate.now();
+            if (dia.isBefore(hoy)) {
+                return;
+            }
+            BitSet libre = (BitSet) apertura.clone();
+            libre.andNot(ocupacion.get(dia));
+            if (dia.equals(hoy)) {
+                // Hoy solo cuentan los bloques que todavía no empezaron
+                int segundoActual = LocalTime.now().toSecondOfDay();
+                libre.clear(0, Math.min(BLOQUES_DIA, (segundoActual + MINUTOS_BLOQUE * 60 - 1) / (MINUTOS_BLOQUE * 60)));
+            }
+
+            int inicio = libre.nextSetBit(0);
+            while (inicio >= 0 && huecos.size() < maximo) {
+                int finTramo = libre.nextClearBit(inicio);
+                while (inicio + bloques <= finTramo && huecos.size() < maximo) {
+                    huecos.add(new HuecoLibre(dia, horaDeBloque(inicio), horaDeBloque(inicio + bloques)));
+                    inicio += bloques;
+                }
+                inicio = libre.nextSetBit(finTramo);
+            }
+        }
+    }
+
+    /**
+     * Un horario libre: fecha, hora de inicio y de fin.
+     */
+    public static class HuecoLibre {
+
+        private final LocalDate fecha;
+        private final LocalTime inicio;
+        private final LocalTime fin;
+
+        HuecoLibre(LocalDate fecha, LocalTime inicio, LocalTime fin) {
+            this.fecha = fecha;
+            this.inicio = inicio;
+            this.fin = fin;
+        }
+
+        public LocalDate getFecha() {
+            return fecha;
+        }
+
+        public LocalTime getInicio() {
+            return inicio;
+        }
+
+        public LocalTime getFin() {
+            return fin;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package logica;
+
+import java.io.Serializable;
+import java.util.Date;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+
+/**
+ * Marca de borrado: la fila ya no existe pero la sincronización por ?since=
+ * tiene que poder avisar que se eliminó. La escriben los destroy de los
+ * JpaController en la misma transacción que el borrado.
+ *
+ * Se purgan pasado el plazo de retención; quien pida cambios desde antes de
+ * ese plazo tiene que volver a bajar el listado completo.
+ */
+@Entity
+@Table(indexes = {
+        @Index(name = "idx_baja_coleccion_fecha", columnList = "coleccion, eliminado_en")
+})
+public class Baja implements Serializable {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(length = 20, nullable = false)
+    private VersionesDatos.Coleccion coleccion;
+
+    // DNI del paciente o id del turno / historial, como texto
+    @Column(nullable = false)
+    private String clave;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "eliminado_en", columnDefinition = "DATETIME(3)", nullable = false)
+    private Date eliminadoEn;
+
+    public Baja() {
+    }
+
+    public Baja(VersionesDatos.Coleccion coleccion, String clave) {
+        this.coleccion = coleccion;
+        this.clave = clave;
+        this.eliminadoEn = new Date();
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public VersionesDatos.Coleccion getColeccion() {
+        return coleccion;
+    }
+
+    public String getClave() {
+        return clave;
+    }
+
+    public Date getEliminadoEn() {
+        return eliminadoEn;
+    }
+}
@@ -1,14 +1,41 @@
 package logica;
 
 import Persistencia.ControladoraPersistencia;
+import Persistencia.exceptions.ConflictoTurnoException;
+import java.io.IOException;
+import java.io.Reader;
+import java.time.LocalDate;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class Controladora {
 
-    ControladoraPersistencia controlPersis = new ControladoraPersistencia();
+    ControladoraPersistencia controlPersis;
+    private final EstadisticasDashboard estadisticas;
+    private final AgendaDisponibilidad agenda;
+    // Listados pedidos a la vez por varios navegadores: una sola consulta en curso por clave
+    private final LecturasCoalescidas lecturas = new LecturasCoalescidas();
+    // Sellos para ETag/Last-Modified de los servlets
+    private final VersionesDatos versiones = new VersionesDatos();
+    // Avisos de cambios a SvEventos (y a quien se suscriba)
+    private final List<Consumer<EventoCambio>> suscriptores = new CopyOnWriteArrayList<>();
+    // Bajas anteriores a este instante ya se purgaron: un ?since= más viejo no puede responderse
+    private volatile Date horizonteBajas = new Date(Long.MAX_VALUE);
+
+    public Controladora() {
+        this(new ControladoraPersistencia());
+    }
+
+    public Controladora(ControladoraPersistencia controlPersis) {
+        this.controlPersis = controlPersis;
+        this.estadisticas = new EstadisticasDashboard(controlPersis);
+        this.agenda = new AgendaDisponibilidad(controlPersis);
+    }
 
     // ============== MÉTODOS CRUD PACIENTE ==============
 
@@ -20,6 +47,9 @@ public class Controladora {
                     direccion, fecha_nac, email, obraSocial);
             pacien.setAntecedents(antecedents != null ? antecedents : "{}");
             controlPersis.crearPaciente(pacien);
+            escrito(VersionesDatos.Coleccion.PACIENTES, dniPaciente);
+            estadisticas.pacienteCreado(pacien);
+            publicar(EventoCambio.pacienteCreado(pacien));
         } catch (Exception ex) {
             Logger.getLogger(Controladora.class.getName()).log(Level.SEVERE, null, ex);
         }
@@ -36,6 +66,8 @@ public class Controladora {
     public void editarPaciente(Paciente paciente) {
         try {
             controlPersis.editarPaciente(paciente);
+            escrito(VersionesDatos.Coleccion.PACIENTES, paciente.getDniPaciente());
+            estadisticas.pacienteEditado(paciente);
         } catch (Exception ex) {
             Logger.getLogger(Controladora.class.getName()).log(Level.SEVERE, null, ex);
         }
@@ -44,20 +76,70 @@ public class Controladora {
     public void eliminarPaciente(String dni) {
         try {
             controlPersis.eliminarPaciente(dni);
+            // Con el paciente se borran (en cascada) sus turnos e historias
+            escrito(VersionesDatos.Coleccion.TURNOS, null);
+            escrito(VersionesDatos.Coleccion.HISTORIALES, null);
+            escrito(VersionesDatos.Coleccion.PACIENTES, dni);
+            estadisticas.pacienteEliminado(dni);
+            agenda.invalidar();
+            publicar(EventoCambio.recargar());
         } catch (Exception ex) {
             Logger.getLogger(Controladora.class.getName()).log(Level.SEVERE, null, ex);
         }
     }
 
-    public List<Paciente> buscarPacientes(String criterio) {
-        return controlPersis.buscarPacientes(criterio);
+    public List<PacienteListado> traerListadoPacientes() {
+        return lecturas.leer("pacientes.listado", controlPersis::traerListadoPacientes);
+    }
+
+    public List<PacienteListado> traerPaginaPacientes(String despuesDeDni, int limite) {
+        return lecturas.leer("pacientes.pagina",
+                () -> controlPersis.traerPaginaPacientes(despuesDeDni, limite), despuesDeDni, limite);
+    }
+
+    public List<PacienteListado> buscarPacientes(String criterio, int limite) {
+        return lecturas.leer("pacientes.busqueda",
+                () -> controlPersis.buscarPacientes(criterio, limite), criterio, limite);
+    }
+
+    // Recorre el listado completo en lotes por cursor (DNI): en memoria nunca hay más de un lote
+    public void recorrerListadoPacientes(int lote, Consumer<PacienteListado> porPaciente) {
+        String despuesDe = null;
+        List<PacienteListado> pagina;
+        do {
+            pagina = traerPaginaPacientes(despuesDe, lote);
+            pagina.forEach(porPaciente);
+            if (!pagina.isEmpty()) {
+                despuesDe = pagina.get(pagina.size() - 1).getDni();
+            }
+        } while (pagina.size() == lote);
+    }
+
+    public void normalizarBusquedaPacientes() {
+        try {
+            int actualizados = controlPersis.normalizarBusquedaPacientes();
+            if (actualizados > 0) {
+                versiones.todoModificado();
+                Logger.getLogger(Controladora.class.getName()).log(Level.INFO,
+                        "Columnas de búsqueda completadas para {0} pacientes", actualizados);
+            }
+        } catch (Exception ex) {
+            Logger.getLogger(Controladora.class.getName()).log(Level.SEVERE, null, ex);
+        }
     }
 
     // ============== MÉTODOS CRUD TURNO ==============
 
-    public void crearTurno(Turno turno) {
+    // Los conflictos (horario ocupado, versión vencida) se propagan para responder 409
+    public void crearTurno(Turno turno) throws ConflictoTurnoException {
         try {
             controlPersis.crearTurno(turno);
+            escrito(VersionesDatos.Coleccion.TURNOS, null);
+            estadisticas.turnoCreado(turno);
+            agenda.turnoCreado(turno);
+            publicarTurno(EventoCambio.Tipo.TURNO_CREADO, turno.getId_turno());
+        } catch (ConflictoTurnoException ex) {
+            throw ex;
         } catch (Exception ex) {
             Logger.getLogger(Controladora.class.getName()).log(Level.SEVERE, null, ex);
         }
@@ -75,9 +157,19 @@ public class Controladora {
         return controlPersis.traerTurno(id);
     }
 
-    public void editarTurno(Turno turno) {
+    public void editarTurno(Turno turno) throws ConflictoTurnoException {
         try {
+            Turno anterior = controlPersis.traerTurno(turno.getId_turno());
             controlPersis.editarTurno(turno);
+            escrito(VersionesDatos.Coleccion.TURNOS, null);
+            estadisticas.turnoEditado(anterior, turno);
+            agenda.turnoEditado(anterior, turno);
+            boolean cancelado = turno.getEstado() == Turno.EstadoTurno.CANCELADO
+                    && (anterior == null || anterior.getEstado() != Turno.EstadoTurno.CANCELADO);
+            publicarTurno(cancelado ? EventoCambio.Tipo.TURNO_CANCELADO : EventoCambio.Tipo.TURNO_ACTUALIZADO,
+                    turno.getId_turno());
+        } catch (ConflictoTurnoException ex) {
+            throw ex;
         } catch (Exception ex) {
             Logger.getLogger(Controladora.class.getName()).log(Level.SEVERE, null, ex);
         }
@@ -85,16 +177,94 @@ public class Controladora {
 
     public void eliminarTurno(int id) {
         try {
+            Turno anterior = controlPersis.traerTurno(id);
             controlPersis.eliminarTurno(id);
+            escrito(VersionesDatos.Coleccion.TURNOS, null);
+            estadisticas.turnoEliminado(anterior);
+            agenda.turnoEliminado(anterior);
+            publicar(EventoCambio.turnoEliminado(id));
+        } catch (Exception ex) {
+            Logger.getLogger(Controladora.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    public void crearIndicesFaltantes() {
+        try {
+            int creados = controlPersis.crearIndicesFaltantes();
+            if (creados > 0) {
+                Logger.getLogger(Controladora.class.getName()).log(Level.INFO,
+                        "Creados {0} índices que faltaban en la base", creados);
+            }
+        } catch (Exception ex) {
+            Logger.getLogger(Controladora.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    public void completarMinutosTurnos() {
+        try {
+            int completados = controlPersis.completarMinutosTurnos();
+            if (completados > 0) {
+                versiones.todoModificado();
+                Logger.getLogger(Controladora.class.getName()).log(Level.INFO,
+                        "Minuto de inicio completado para {0} turnos", completados);
+            }
+        } catch (Exception ex) {
+            Logger.getLogger(Controladora.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    public void marcarHorariosOcupados() {
+        try {
+            int marcados = controlPersis.marcarHorariosOcupados();
+            if (marcados > 0) {
+                versiones.todoModificado();
+                Logger.getLogger(Controladora.class.getName()).log(Level.INFO,
+                        "Horarios ocupados marcados para {0} turnos", marcados);
+            }
         } catch (Exception ex) {
             Logger.getLogger(Controladora.class.getName()).log(Level.SEVERE, null, ex);
         }
     }
 
-    public List<Turno> traerTurnosPorFecha(Date fecha) {
+    public List<Turno> traerTurnosPorFecha(LocalDate fecha) {
         return controlPersis.traerTurnosPorFecha(fecha);
     }
 
+    public List<Turno> traerTurnosPorRangoFecha(LocalDate desde, LocalDate hasta) {
+        return controlPersis.traerTurnosPorRangoFecha(desde, hasta);
+    }
+
+    public List<TurnoListado> traerListadoTurnos() {
+        return lecturas.leer("turnos.listado", controlPersis::traerListadoTurnos);
+    }
+
+    public List<TurnoListado> traerListadoTurnosPorRangoFecha(LocalDate desde, LocalDate hasta) {
+        return lecturas.leer("turnos.rango",
+                () -> controlPersis.traerListadoTurnosPorRangoFecha(desde, hasta), desde, hasta);
+    }
+
+    public List<TurnoListado> traerPaginaTurnos(LocalDate despuesDeFecha, Integer despuesDeId, int limite) {
+        return lecturas.leer("turnos.pagina",
+                () -> controlPersis.traerPaginaTurnos(despuesDeFecha, despuesDeId, limite),
+                despuesDeFecha, despuesDeId, limite);
+    }
+
+    // Igual que recorrerListadoPacientes, con cursor (fecha, id): el orden es por fecha y alta
+    public void recorrerListadoTurnos(int lote, Consumer<TurnoListado> porTurno) {
+        LocalDate despuesDeFecha = null;
+        Integer despuesDeId = null;
+        List<TurnoListado> pagina;
+        do {
+            pagina = traerPaginaTurnos(despuesDeFecha, despuesDeId, lote);
+            pagina.forEach(porTurno);
+            if (!pagina.isEmpty()) {
+                TurnoListado ultimo = pagina.get(pagina.size() - 1);
+                despuesDeFecha = ultimo.getFecha();
+                despuesDeId = ultimo.getId();
+            }
+        } while (pagina.size() == lote);
+    }
+
     public List<Turno> traerTurnosPorPaciente(String dniPaciente) {
         return controlPersis.traerTurnosPorPaciente(dniPaciente);
     }
@@ -109,11 +279,20 @@ public class Controladora {
                     tratamiento, medicamentos, notas,
                     paciente, numeroConsulta);
             controlPersis.crearHistorialMedico(historial);
+            escrito(VersionesDatos.Coleccion.HISTORIALES, dniDe(historial));
+            estadisticas.consultaCreada(fecha);
         } catch (Exception ex) {
             Logger.getLogger(Controladora.class.getName()).log(Level.SEVERE, null, ex);
         }
     }
 
+    // Propaga el error para que el servlet pueda informarlo (SvOdontograma)
+    public void registrarHistorialMedico(HistorialMedico historial) throws Exception {
+        controlPersis.crearHistorialMedico(historial);
+        escrito(VersionesDatos.Coleccion.HISTORIALES, dniDe(historial));
+        estadisticas.consultaCreada(historial.getFecha_registro());
+    }
+
     public List<HistorialMedico> traerHistorialesMedicos() {
         return controlPersis.traerHistorialesMedicos();
     }
@@ -124,7 +303,11 @@ public class Controladora {
 
     public void editarHistorialMedico(HistorialMedico historial) {
         try {
+            HistorialMedico anterior = controlPersis.traerHistorialMedico(historial.getId());
             controlPersis.editarHistorialMedico(historial);
+            escrito(VersionesDatos.Coleccion.HISTORIALES, dniDe(historial));
+            estadisticas.consultaEliminada(anterior != null ? anterior.getFecha_registro() : null);
+            estadisticas.consultaCreada(historial.getFecha_registro());
         } catch (Exception ex) {
             Logger.getLogger(Controladora.class.getName()).log(Level.SEVERE, null, ex);
         }
@@ -132,7 +315,10 @@ public class Controladora {
 
     public void eliminarHistorialMedico(Long id) {
         try {
+            HistorialMedico anterior = controlPersis.traerHistorialMedico(id);
             controlPersis.eliminarHistorialMedico(id);
+            escrito(VersionesDatos.Coleccion.HISTORIALES, dniDe(anterior));
+            estadisticas.consultaEliminada(anterior != null ? anterior.getFecha_registro() : null);
         } catch (Exception ex) {
             Logger.getLogger(Controladora.class.getName()).log(Level.SEVERE, null, ex);
         }
@@ -142,6 +328,11 @@ public class Controladora {
         return controlPersis.traerHistorialesPorPaciente(dniPaciente);
     }
 
+    public List<HistorialListado> traerListadoHistorialesPorPaciente(String dniPaciente) {
+        return lecturas.leer("historiales.paciente",
+                () -> controlPersis.traerListadoHistorialesPorPaciente(dniPaciente), dniPaciente);
+    }
+
     public void crearHistorialMedicoConOdontograma(Date fecha, String motivo, String diagnostico,
             String tratamiento, String medicamentos,
             String notas, Paciente paciente, Integer numeroConsulta, String estadoDientes,
@@ -159,6 +350,8 @@ public class Controladora {
             historial.setOdontograma(odonto);
 
             controlPersis.crearHistorialMedico(historial);
+            escrito(VersionesDatos.Coleccion.HISTORIALES, dniDe(historial));
+            estadisticas.consultaCreada(fecha);
         } catch (Exception ex) {
             Logger.getLogger(Controladora.class.getName()).log(Level.SEVERE, null, ex);
         }
@@ -170,6 +363,7 @@ public class Controladora {
         try {
             Odontograma odonto = new Odontograma(historial, estadoDientes, observaciones);
             controlPersis.crearOdontograma(odonto);
+            escrito(VersionesDatos.Coleccion.HISTORIALES, dniDe(historial));
         } catch (Exception ex) {
             Logger.getLogger(Controladora.class.getName()).log(Level.SEVERE, null, ex);
         }
@@ -182,8 +376,187 @@ public class Controladora {
     public void editarOdontograma(Odontograma odonto) {
         try {
             controlPersis.editarOdontograma(odonto);
+            escrito(VersionesDatos.Coleccion.HISTORIALES, dniDe(odonto.getHistorialMedico()));
+        } catch (Exception ex) {
+            Logger.getLogger(Controladora.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    public Odontograma traerUltimoOdontogramaPorPaciente(String dniPaciente) {
+        return controlPersis.traerUltimoOdontogramaPorPaciente(dniPaciente);
+    }
+
+    // ============== DASHBOARD ==============
+
+    public EstadisticasDashboard.Resumen traerResumenDashboard() {
+        return estadisticas.resumen();
+    }
+
+    public void reconciliarEstadisticas() {
+        try {
+            estadisticas.reconciliar();
+        } catch (Exception ex) {
+            Logger.getLogger(Controladora.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    // ============== DISPONIBILIDAD ==============
+
+    public List<AgendaDisponibilidad.HuecoLibre> traerHuecosLibres(LocalDate desde, LocalDate hasta,
+            int duracionMinutos) {
+        return agenda.huecosLibres(desde, hasta, duracionMinutos);
+    }
+
+    public AgendaDisponibilidad.HuecoLibre traerProximoHuecoLibre(LocalDate desde, int duracionMinutos) {
+        return agenda.proximoHueco(desde, duracionMinutos);
+    }
+
+    // Descarta los días en memoria (y los Horario) para tomar escrituras hechas fuera de la app
+    public void reconciliarAgenda() {
+        agenda.invalidar();
+    }
+
+    // Fuerza un listado nuevo en todos los clientes: los sellos no ven escrituras hechas fuera de la app
+    public void reconciliarVersiones() {
+        versiones.todoModificado();
+    }
+
+    // ============== IMPORTACIÓN MASIVA ==============
+
+    public Importador.ResultadoImportacion importar(Reader entrada, String formato, String tipoPorDefecto)
+            throws IOException {
+        try {
+            return new Importador(controlPersis).importar(entrada, formato, tipoPorDefecto);
+        } finally {
+            lecturas.olvidar();
+            versiones.todoModificado();
+            publicar(EventoCambio.recargar());
+            estadisticas.invalidar();
+            agenda.invalidar();
+        }
+    }
+
+    // Libera los hilos propios (lecturas del dashboard); lo llama el ContenedorAplicacion
+    public void cerrar() {
+        estadisticas.cerrar();
+    }
+
+    // ============== VERSIONES (ETag / Last-Modified) ==============
+
+    public long versionColeccion(VersionesDatos.Coleccion coleccion) {
+        return versiones.coleccion(coleccion);
+    }
+
+    public long versionPaciente(String dni) {
+        return versiones.paciente(dni);
+    }
+
+    // Después de cada escritura confirmada: las lecturas en curso ya no se comparten
+    // y los sellos avanzan (antes del commit, un GET podría leer datos viejos con sello nuevo)
+    private void escrito(VersionesDatos.Coleccion coleccion, String dni) {
+        lecturas.olvidar();
+        versiones.modificado(coleccion);
+        versiones.pacienteModificado(dni);
+    }
+
+    private static String dniDe(HistorialMedico historial) {
+        if (historial == null || historial.getPaciente() == null) {
+            return null;
+        }
+        return historial.getPaciente().getDniPaciente();
+    }
+
+    // ============== SINCRONIZACIÓN (?since=) ==============
+
+    // Las lecturas por ?since= no se coalescen: cada cliente pide desde su propio instante
+
+    public List<PacienteListado> traerPacientesModificadosDesde(Date desde) {
+        return controlPersis.traerListadoPacientesModificadosDesde(desde);
+    }
+
+    public List<TurnoListado> traerTurnosModificadosDesde(Date desde) {
+        return controlPersis.traerListadoTurnosModificadosDesde(desde);
+    }
+
+    public List<HistorialListado> traerHistorialesModificadosDesde(Date desde) {
+        return controlPersis.traerListadoHistorialesModificadosDesde(desde);
+    }
+
+    // DNI o ids (como texto) eliminados desde el instante dado
+    public List<String> traerBajasDesde(VersionesDatos.Coleccion coleccion, Date desde) {
+        return controlPersis.traerBajasDesde(coleccion, desde);
+    }
+
+    // false si las bajas de ese período ya se purgaron: el cliente tiene que bajar el listado completo
+    public boolean sincronizableDesde(Date desde) {
+        return !desde.before(horizonteBajas);
+    }
+
+    public void completarFechasModificacion() {
+        try {
+            int completadas = controlPersis.completarFechasModificacion();
+            if (completadas > 0) {
+                versiones.todoModificado();
+                Logger.getLogger(Controladora.class.getName()).log(Level.INFO,
+                        "Fecha de modificación completada para {0} filas", completadas);
+            }
+        } catch (Exception ex) {
+            Logger.getLogger(Controladora.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    // El horizonte solo avanza si la purga se confirmó; hasta la primera, ningún ?since= es válido
+    public void purgarBajas(int diasRetencion) {
+        try {
+            Date limite = new Date(System.currentTimeMillis() - diasRetencion * 24L * 60 * 60 * 1000);
+            int borradas = controlPersis.purgarBajasAnteriores(limite);
+            horizonteBajas = limite;
+            if (borradas > 0) {
+                Logger.getLogger(Controladora.class.getName()).log(Level.INFO,
+                        "Purgadas {0} bajas anteriores a {1}", new Object[] { borradas, limite });
+            }
         } catch (Exception ex) {
             Logger.getLogger(Controladora.class.getName()).log(Level.SEVERE, null, ex);
         }
     }
+
+    // ============== EVENTOS ==============
+
+    public void suscribirEventos(Consumer<EventoCambio> suscriptor) {
+        suscriptores.add(suscriptor);
+    }
+
+    public void desuscribirEventos(Consumer<EventoCambio> suscriptor) {
+        suscriptores.remove(suscriptor);
+    }
+
+    // Se relee el turno (caché compartida) para publicar la versión y el paciente que quedaron
+    // guardados: tras el merge, el objeto editado conserva la versión anterior
+    private void publicarTurno(EventoCambio.Tipo tipo, int id) {
+        Turno guardado = controlPersis.traerTurno(id);
+        if (guardado != null) {
+            publicar(EventoCambio.turno(tipo, guardado));
+        }
+    }
+
+    // Un suscriptor con problemas no debe hacer fallar la escritura que ya se confirmó
+    private void publicar(EventoCambio evento) {
+        for (Consumer<EventoCambio> suscriptor : suscriptores) {
+            try {
+                suscriptor.accept(evento);
+            } catch (RuntimeException ex) {
+                Logger.getLogger(Controladora.class.getName()).log(Level.WARNING, "Error publicando evento", ex);
+            }
+        }
+    }
+
+    // ============== MÉTRICAS ==============
+
+    public Map<String, Object> estadisticasCache() {
+        return controlPersis.estadisticasCache();
+    }
+
+    public Map<String, Object> estadisticasCoalescencia() {
+        return lecturas.metricas();
+    }
 }
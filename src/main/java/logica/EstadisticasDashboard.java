@@ -0,0 +1,426 @@
+package logica;
+
+import Persistencia.ControladoraPersistencia;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Contadores del dashboard mantenidos en memoria. La Controladora los
+ * actualiza en cada alta/edición/baja de pacientes, turnos y consultas, así
+ * SvDashboard responde sin consultar MySQL.
+ *
+ * Los valores se cargan de la base la primera vez, al cambiar de día (turnos
+ * de hoy y consultas del mes pasan a ser otros) y en cada reconciliar(), que
+ * el ContenedorAplicacion ejecuta periódicamente para corregir desvíos (p. ej.
+ * bajas de pacientes con borrado en cascada o escrituras fuera de la app).
+ * Las lecturas de una carga corren en paralelo con un límite de tiempo común;
+ * si alguna no llega, el resumen sale con el resto y se recarga en la siguiente.
+ * La carga va fuera del monitor, así un dashboard esperando a MySQL no frena
+ * los avisos de las escrituras; el monitor se toma solo para publicarla.
+ *
+ * Filas de turnos de hoy: {id, hora, nombre, apellido, afeccion, estado, dni,
+ * minutoInicio}; se ordenan por minuto como la consulta, no por el texto de
+ * la hora ("9:00" de un turno viejo quedaría después de "10:00").
+ * Filas de pacientes recientes: {dni, nombre, apellido, telefono, email}.
+ */
+public class EstadisticasDashboard {
+
+    public static final int CANTIDAD_RECIENTES = 5;
+
+    private static final int LECTURAS_PARALELAS = 5;
+    private static final long TIMEOUT_LECTURA_MS = 3000;
+
+    // Sin minuto primero, igual que el ORDER BY de MySQL
+    private static final Comparator<Object[]> POR_HORA = Comparator.comparing(
+            (Object[] fila) -> (Integer) fila[7], Comparator.nullsFirst(Comparator.<Integer>naturalOrder()));
+
+    private final ControladoraPersistencia controlPersis;
+
+    private boolean cargado = false;
+    private LocalDate dia;
+    private int totalPacientes;
+    private int consultasMes;
+    private final Map<Turno.EstadoTurno, Long> turnosPorEstado = new EnumMap<>(Turno.EstadoTurno.class);
+    private final List<Object[]> turnosHoy = new ArrayList<>();
+    private final List<Object[]> pacientesRecientes = new ArrayList<>();
+    private boolean incompleto = false;
+    // Avisos recibidos; una carga que se cruzó con alguno puede no incluirlo (ver recargar())
+    private long cambios;
+
+    // Las cinco lecturas de cargarDesdeBase() son independientes: van en paralelo,
+    // cada una con su EntityManager (los JpaController abren uno por llamada)
+    private final ThreadPoolExecutor lecturas;
+
+    public EstadisticasDashboard(ControladoraPersistencia controlPersis) {
+        this.controlPersis = controlPersis;
+        AtomicInteger hilos = new AtomicInteger();
+        this.lecturas = new ThreadPoolExecutor(LECTURAS_PARALELAS, LECTURAS_PARALELAS, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(LECTURAS_PARALELAS * 2), r -> {
+                    Thread t = new Thread(r, "dashboard-lectura-" + hilos.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+        this.lecturas.allowCoreThreadTimeOut(true);
+    }
+
+    // ============== LECTURA ==============
+
+    public Resumen resumen() {
+        synchronized (this) {
+            if (cargado && !incompleto && LocalDate.now().equals(dia)) {
+                return copia();
+            }
+        }
+        recargar();
+        synchronized (this) {
+            return copia();
+        }
+    }
+
+    private Resumen copia() {
+        // Las filas de hoy se modifican en el lugar (pacienteEditado): se copian también
+        List<Object[]> copiaTurnos = new ArrayList<>(turnosHoy.size());
+        for (Object[] fila : turnosHoy) {
+            copiaTurnos.add(fila.clone());
+        }
+        return new Resumen(totalPacientes, consultasMes,
+                turnosPorEstado.getOrDefault(Turno.EstadoTurno.PENDIENTE, 0L),
+                copiaTurnos, new ArrayList<>(pacientesRecientes));
+    }
+
+    public void reconciliar() {
+        recargar();
+    }
+
+    // Fuerza la recarga en la próxima lectura
+    public synchronized void invalidar() {
+        cambios++;
+        cargado = false;
+    }
+
+    public void cerrar() {
+        lecturas.shutdownNow();
+    }
+
+    // Lee sin el monitor y publica lo leído. Si mientras tanto llegó algún aviso, la carga
+    // puede no incluirlo: se publica igual (sirve para la respuesta en curso) pero queda
+    // incompleta y la próxima lectura vuelve a la base
+    private void recargar() {
+        long cambiosAlLeer;
+        synchronized (this) {
+            cambiosAlLeer = cambios;
+        }
+        Carga carga = leerDeBase();
+        synchronized (this) {
+            publicar(carga, cambios == cambiosAlLeer);
+        }
+    }
+
+    // Si una lectura falla o pasa TIMEOUT_LECTURA_MS queda en null
+    private Carga leerDeBase() {
+        LocalDate hoy = LocalDate.now();
+        Date inicioMes = Date.from(hoy.withDayOfMonth(1).atStartOfDay(ZoneId.systemDefault()).toInstant());
+        Date finMes = Date.from(hoy.withDayOfMonth(hoy.lengthOfMonth()).atStartOfDay(ZoneId.systemDefault()).toInstant());
+
+        Future<Integer> fPacientes = lecturas.submit(controlPersis::contarPacientes);
+        Future<Integer> fConsultas = lecturas.submit(() -> controlPersis.contarHistorialesEntre(inicioMes, finMes));
+        Future<Map<Turno.EstadoTurno, Long>> fEstados = lecturas.submit(controlPersis::contarTurnosPorEstado);
+        Future<List<Object[]>> fHoy = lecturas.submit(() -> controlPersis.traerResumenTurnosPorFecha(hoy));
+        Future<List<Object[]>> fRecientes = lecturas.submit(
+                () -> controlPersis.traerPacientesRecientes(CANTIDAD_RECIENTES));
+
+        long limite = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TIMEOUT_LECTURA_MS);
+        Carga carga = new Carga(hoy);
+        carga.pacientes = esperar(fPacientes, limite, "pacientes");
+        carga.consultas = esperar(fConsultas, limite, "consultas del mes");
+        carga.estados = esperar(fEstados, limite, "turnos por estado");
+        carga.deHoy = esperar(fHoy, limite, "turnos de hoy");
+        carga.recientes = esperar(fRecientes, limite, "pacientes recientes");
+        return carga;
+    }
+
+    // Lo que no se pudo leer conserva el valor anterior si es del mismo día
+    private void publicar(Carga carga, boolean sinCambiosEnMedio) {
+        LocalDate hoy = carga.dia;
+        boolean mismoDia = cargado && hoy.equals(dia);
+        boolean completo = sinCambiosEnMedio;
+
+        if (carga.pacientes != null) {
+            totalPacientes = carga.pacientes;
+        } else {
+            completo = false;
+            if (!cargado) {
+                totalPacientes = 0;
+            }
+        }
+
+        if (carga.consultas != null) {
+            consultasMes = carga.consultas;
+        } else {
+            completo = false;
+            if (!mismoDia) {
+                consultasMes = 0;
+            }
+        }
+
+        if (carga.estados != null) {
+            turnosPorEstado.clear();
+            turnosPorEstado.putAll(carga.estados);
+        } else {
+            completo = false;
+        }
+
+        if (carga.deHoy != null || !mismoDia) {
+            turnosHoy.clear();
+        }
+        if (carga.deHoy != null) {
+            turnosHoy.addAll(carga.deHoy);
+        } else {
+            completo = false;
+        }
+
+        if (carga.recientes != null) {
+            pacientesRecientes.clear();
+            pacientesRecientes.addAll(carga.recientes);
+        } else {
+            completo = false;
+        }
+
+        dia = hoy;
+        incompleto = !completo;
+        cargado = true;
+    }
+
+    // null si la lectura falló o no terminó antes del límite (se cancela)
+    private static <T> T esperar(Future<T> futuro, long limiteNanos, String lectura) {
+        try {
+            return futuro.get(Math.max(0, limiteNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            futuro.cancel(true);
+            Logger.getLogger(EstadisticasDashboard.class.getName()).log(Level.WARNING,
+                    "Dashboard: {0} sin respuesta en {1} ms", new Object[] { lectura, TIMEOUT_LECTURA_MS });
+        } catch (InterruptedException e) {
+            futuro.cancel(true);
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Logger.getLogger(EstadisticasDashboard.class.getName()).log(Level.WARNING,
+                    "Dashboard: falló la lectura de " + lectura, e.getCause());
+        }
+        return null;
+    }
+
+    // ============== PACIENTES ==============
+
+    public synchronized void pacienteCreado(Paciente p) {
+        cambios++;
+        if (!cargado) {
+            return;
+        }
+        totalPacientes++;
+        pacientesRecientes.add(0, filaPaciente(p));
+        if (pacientesRecientes.size() > CANTIDAD_RECIENTES) {
+            pacientesRecientes.remove(pacientesRecientes.size() - 1);
+        }
+    }
+
+    public synchronized void pacienteEditado(Paciente p) {
+        cambios++;
+        if (!cargado) {
+            return;
+        }
+        for (int i = 0; i < pacientesRecientes.size(); i++) {
+            if (pacientesRecientes.get(i)[0].equals(p.getDniPaciente())) {
+                pacientesRecientes.set(i, filaPaciente(p));
+            }
+        }
+        for (Object[] fila : turnosHoy) {
+            if (p.getDniPaciente() != null && p.getDniPaciente().equals(fila[6])) {
+                fila[2] = p.getNombre();
+                fila[3] = p.getApellido();
+            }
+        }
+    }
+
+    // La baja borra en cascada turnos y consultas: se recalcula todo en la próxima lectura
+    public synchronized void pacienteEliminado(String dni) {
+        cambios++;
+        cargado = false;
+    }
+
+    private static Object[] filaPaciente(Paciente p) {
+        return new Object[] { p.getDniPaciente(), p.getNombre(), p.getApellido(), p.getTelefono(), p.getEmail() };
+    }
+
+    // ============== TURNOS ==============
+
+    public synchronized void turnoCreado(Turno t) {
+        cambios++;
+        if (!cargado) {
+            return;
+        }
+        sumarEstado(t.getEstado(), 1);
+        if (esHoy(t.getFecha_Turno())) {
+            agregarTurnoHoy(t);
+        }
+    }
+
+    public synchronized void turnoEditado(Turno anterior, Turno nuevo) {
+        cambios++;
+        if (!cargado) {
+            return;
+        }
+        if (anterior != null) {
+            sumarEstado(anterior.getEstado(), -1);
+            quitarTurnoHoy(anterior.getId_turno());
+        }
+        sumarEstado(nuevo.getEstado(), 1);
+        if (esHoy(nuevo.getFecha_Turno())) {
+            agregarTurnoHoy(nuevo);
+        }
+    }
+
+    public synchronized void turnoEliminado(Turno anterior) {
+        cambios++;
+        if (!cargado || anterior == null) {
+            return;
+        }
+        sumarEstado(anterior.getEstado(), -1);
+        quitarTurnoHoy(anterior.getId_turno());
+    }
+
+    private void sumarEstado(Turno.EstadoTurno estado, long delta) {
+        if (estado != null) {
+            turnosPorEstado.merge(estado, delta, Long::sum);
+        }
+    }
+
+    private void agregarTurnoHoy(Turno t) {
+        Paciente p = t.getPacien();
+        turnosHoy.add(new Object[] { t.getId_turno(), t.getHora_Turno(),
+                p != null ? p.getNombre() : null, p != null ? p.getApellido() : null,
+                t.getAfeccion(), t.getEstado(), p != null ? p.getDniPaciente() : null, t.getMinutoInicio() });
+        Collections.sort(turnosHoy, POR_HORA);
+    }
+
+    private void quitarTurnoHoy(int id) {
+        Iterator<Object[]> it = turnosHoy.iterator();
+        while (it.hasNext()) {
+            if (((Number) it.next()[0]).intValue() == id) {
+                it.remove();
+            }
+        }
+    }
+
+    // ============== CONSULTAS ==============
+
+    public synchronized void consultaCreada(Date fecha) {
+        cambios++;
+        if (cargado && esDelMes(fecha)) {
+            consultasMes++;
+        }
+    }
+
+    public synchronized void consultaEliminada(Date fecha) {
+        cambios++;
+        if (cargado && esDelMes(fecha)) {
+            consultasMes--;
+        }
+    }
+
+    // ============== FECHAS ==============
+
+    private boolean esHoy(LocalDate fecha) {
+        return dia.equals(fecha);
+    }
+
+    private boolean esDelMes(Date fecha) {
+        if (fecha == null) {
+            return false;
+        }
+        LocalDate f = aLocalDate(fecha);
+        return f.getYear() == dia.getYear() && f.getMonth() == dia.getMonth();
+    }
+
+    // java.sql.Date (lo que devuelve JPA) no soporta toInstant()
+    static LocalDate aLocalDate(Date fecha) {
+        if (fecha instanceof java.sql.Date) {
+            return ((java.sql.Date) fecha).toLocalDate();
+        }
+        return fecha.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+    }
+
+    /**
+     * Resultado de una carga de la base; null en lo que no se pudo leer.
+     */
+    private static class Carga {
+
+        final LocalDate dia;
+        Integer pacientes;
+        Integer consultas;
+        Map<Turno.EstadoTurno, Long> estados;
+        List<Object[]> deHoy;
+        List<Object[]> recientes;
+
+        Carga(LocalDate dia) {
+            this.dia = dia;
+        }
+    }
+
+    /**
+     * Copia inmutable de los contadores para armar la respuesta del dashboard.
+     */
+    public static class Resumen {
+
+        private final int totalPacientes;
+        private final int consultasMes;
+        private final long pendientes;
+        private final List<Object[]> turnosHoy;
+        private final List<Object[]> pacientesRecientes;
+
+        Resumen(int totalPacientes, int consultasMes, long pendientes,
+                List<Object[]> turnosHoy, List<Object[]> pacientesRecientes) {
+            this.totalPacientes = totalPacientes;
+            this.consultasMes = consultasMes;
+            this.pendientes = pendientes;
+            this.turnosHoy = Collections.unmodifiableList(turnosHoy);
+            this.pacientesRecientes = Collections.unmodifiableList(pacientesRecientes);
+        }
+
+        public int getTotalPacientes() {
+            return totalPacientes;
+        }
+
+        public int getConsultasMes() {
+            return consultasMes;
+        }
+
+        public long getPendientes() {
+            return pendientes;
+        }
+
+        public List<Object[]> getTurnosHoy() {
+            return turnosHoy;
+        }
+
+        public List<Object[]> getPacientesRecientes() {
+            return pacientesRecientes;
+        }
+    }
+}
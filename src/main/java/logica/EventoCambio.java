@@ -0,0 +1,71 @@
+package logica;
+
+/**
+ * Cambio confirmado en la base que la Controladora avisa a sus suscriptores
+ * (SvEventos lo reenvía a los navegadores abiertos). Lleva la fila tal como
+ * la devuelven los listados, para que el cliente la agregue o reemplace sin
+ * volver a pedir la colección.
+ *
+ * RECARGAR avisa cambios masivos (baja de paciente con sus turnos en
+ * cascada, importación) que no vale la pena describir fila por fila.
+ */
+public class EventoCambio {
+
+    public enum Tipo {
+        TURNO_CREADO, TURNO_ACTUALIZADO, TURNO_CANCELADO, TURNO_ELIMINADO, PACIENTE_CREADO, RECARGAR
+    }
+
+    private final Tipo tipo;
+    private final TurnoListado turno;
+    private final PacienteListado paciente;
+    private final Integer idTurno;
+
+    private EventoCambio(Tipo tipo, TurnoListado turno, PacienteListado paciente, Integer idTurno) {
+        this.tipo = tipo;
+        this.turno = turno;
+        this.paciente = paciente;
+        this.idTurno = idTurno;
+    }
+
+    static EventoCambio turno(Tipo tipo, Turno t) {
+        Paciente p = t.getPacien();
+        TurnoListado fila = new TurnoListado(t.getId_turno(), t.getFecha_Turno(), t.getHora_Turno(), t.getAfeccion(),
+                t.getEstado(), t.getObservaciones(), t.getDuracionMinutos(), t.getVersion(),
+                p != null ? p.getDniPaciente() : null, p != null ? p.getNombre() : null,
+                p != null ? p.getApellido() : null);
+        return new EventoCambio(tipo, fila, null, t.getId_turno());
+    }
+
+    static EventoCambio turnoEliminado(int id) {
+        return new EventoCambio(Tipo.TURNO_ELIMINADO, null, null, id);
+    }
+
+    static EventoCambio pacienteCreado(Paciente p) {
+        return new EventoCambio(Tipo.PACIENTE_CREADO, null, new PacienteListado(p.getDniPaciente(), p.getNombre(),
+                p.getApellido(), p.getTelefono(), p.getDireccion(), p.getFecha_nac(), p.getEmail(),
+                p.getObraSocial()), null);
+    }
+
+    static EventoCambio recargar() {
+        return new EventoCambio(Tipo.RECARGAR, null, null, null);
+    }
+
+    public Tipo getTipo() {
+        return tipo;
+    }
+
+    // TURNO_CREADO, TURNO_ACTUALIZADO y TURNO_CANCELADO
+    public TurnoListado getTurno() {
+        return turno;
+    }
+
+    // PACIENTE_CREADO
+    public PacienteListado getPaciente() {
+        return paciente;
+    }
+
+    // Todos los eventos de turno, incluido TURNO_ELIMINADO
+    public Integer getIdTurno() {
+        return idTurno;
+    }
+}
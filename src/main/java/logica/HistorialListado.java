@@ -0,0 +1,101 @@
+package logica;
+
+import java.io.Serializable;
+import java.util.Date;
+
+// Fila del historial de un paciente: la consulta sin el cuerpo del odontograma, solo su id
+public class HistorialListado implements Serializable {
+
+    private final Long id;
+    private final Date fecha_registro;
+    private final Integer numero_consulta;
+    private final String motivo_consulta;
+    private final String diagnostico;
+    private final String tratamiento;
+    private final String medicamentos;
+    private final String notas_adicionales;
+    private final Double debe;
+    private final Double haber;
+    private final Double saldo;
+    private final Long idOdontograma;
+    // Solo en la sincronización de todos los pacientes; null en el historial de uno
+    private final String dniPaciente;
+
+    // Usado por las consultas JPQL "SELECT NEW logica.HistorialListado(...)"
+    public HistorialListado(Long id, Date fecha_registro, Integer numero_consulta, String motivo_consulta,
+            String diagnostico, String tratamiento, String medicamentos, String notas_adicionales,
+            Double debe, Double haber, Double saldo, Long idOdontograma) {
+        this(id, fecha_registro, numero_consulta, motivo_consulta, diagnostico, tratamiento, medicamentos,
+                notas_adicionales, debe, haber, saldo, idOdontograma, null);
+    }
+
+    public HistorialListado(Long id, Date fecha_registro, Integer numero_consulta, String motivo_consulta,
+            String diagnostico, String tratamiento, String medicamentos, String notas_adicionales,
+            Double debe, Double haber, Double saldo, Long idOdontograma, String dniPaciente) {
+        this.id = id;
+        this.fecha_registro = fecha_registro;
+        this.numero_consulta = numero_consulta;
+        this.motivo_consulta = motivo_consulta;
+        this.diagnostico = diagnostico;
+        this.tratamiento = tratamiento;
+        this.medicamentos = medicamentos;
+        this.notas_adicionales = notas_adicionales;
+        this.debe = debe;
+        this.haber = haber;
+        this.saldo = saldo;
+        this.idOdontograma = idOdontograma;
+        this.dniPaciente = dniPaciente;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Date getFecha_registro() {
+        return fecha_registro;
+    }
+
+    public Integer getNumero_consulta() {
+        return numero_consulta;
+    }
+
+    public String getMotivo_consulta() {
+        return motivo_consulta;
+    }
+
+    public String getDiagnostico() {
+        return diagnostico;
+    }
+
+    public String getTratamiento() {
+        return tratamiento;
+    }
+
+    public String getMedicamentos() {
+        return medicamentos;
+    }
+
+    public String getNotas_adicionales() {
+        return notas_adicionales;
+    }
+
+    public Double getDebe() {
+        return debe;
+    }
+
+    public Double getHaber() {
+        return haber;
+    }
+
+    public Double getSaldo() {
+        return saldo;
+    }
+
+    public Long getIdOdontograma() {
+        return idOdontograma;
+    }
+
+    public String getDniPaciente() {
+        return dniPaciente;
+    }
+}
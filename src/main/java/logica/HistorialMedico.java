@@ -3,17 +3,61 @@ package logica;
 import java.io.Serializable;
 import java.util.Date;
 import javax.persistence.CascadeType;
+import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
 import javax.persistence.OneToOne;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
+import javax.persistence.QueryHint;
+import javax.persistence.Table;
 import javax.persistence.Temporal;
 import javax.persistence.TemporalType;
+import org.eclipse.persistence.config.QueryHints;
 
 @Entity
+@Table(indexes = {
+        @Index(name = "idx_historial_paciente_consulta", columnList = "dni_paciente, numero_consulta"),
+        @Index(name = "idx_historial_paciente_fecha", columnList = "dni_paciente, fecha_registro, id"),
+        @Index(name = "idx_historial_fecha", columnList = "fecha_registro"),
+        @Index(name = "idx_historial_updated_at", columnList = "updated_at")
+})
+@NamedQueries({
+        @NamedQuery(name = "HistorialMedico.findByPaciente", query = "SELECT h FROM HistorialMedico h "
+                + "WHERE h.paciente.dni = :dni "
+                + "ORDER BY h.numero_consulta, h.id", hints = {
+                        @QueryHint(name = QueryHints.QUERY_RESULTS_CACHE, value = "true"),
+                        @QueryHint(name = QueryHints.QUERY_RESULTS_CACHE_SIZE, value = "200"),
+                        @QueryHint(name = QueryHints.QUERY_RESULTS_CACHE_EXPIRY, value = "300000"),
+                        @QueryHint(name = QueryHints.QUERY_RESULTS_CACHE_INVALIDATE, value = "true")
+                }),
+        // Listado para la API: sin el cuerpo del odontograma (estadoDientes), solo su id
+        @NamedQuery(name = "HistorialMedico.listarPorPaciente", query = "SELECT NEW logica.HistorialListado(h.id, "
+                + "h.fecha_registro, h.numero_consulta, h.motivo_consulta, h.diagnostico, h.tratamiento, "
+                + "h.medicamentos, h.notas_adicionales, h.debe, h.haber, h.saldo, o.id) "
+                + "FROM HistorialMedico h LEFT JOIN h.odontograma o "
+                + "WHERE h.paciente.dni = :dni "
+                + "ORDER BY h.numero_consulta, h.id", hints = {
+                        @QueryHint(name = QueryHints.QUERY_RESULTS_CACHE, value = "true"),
+                        @QueryHint(name = QueryHints.QUERY_RESULTS_CACHE_SIZE, value = "200"),
+                        @QueryHint(name = QueryHints.QUERY_RESULTS_CACHE_EXPIRY, value = "300000"),
+                        @QueryHint(name = QueryHints.QUERY_RESULTS_CACHE_INVALIDATE, value = "true")
+                }),
+        // Sincronización por ?since= de todos los pacientes: la fila lleva el DNI
+        @NamedQuery(name = "HistorialMedico.listarModificadosDesde", query = "SELECT NEW logica.HistorialListado("
+                + "h.id, h.fecha_registro, h.numero_consulta, h.motivo_consulta, h.diagnostico, h.tratamiento, "
+                + "h.medicamentos, h.notas_adicionales, h.debe, h.haber, h.saldo, o.id, pa.dni) "
+                + "FROM HistorialMedico h LEFT JOIN h.odontograma o LEFT JOIN h.paciente pa "
+                + "WHERE h.updatedAt >= :desde "
+                + "ORDER BY h.updatedAt, h.id")
+})
 public class HistorialMedico implements Serializable {
 
     @Id
@@ -43,6 +87,11 @@ public class HistorialMedico implements Serializable {
     @OneToOne(mappedBy = "historialMedico", cascade = CascadeType.ALL, orphanRemoval = true)
     private Odontograma odontograma;
 
+    // Última escritura, para la sincronización por ?since=
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "updated_at", columnDefinition = "DATETIME(3)")
+    private Date updatedAt;
+
     // Constructor vacío
     public HistorialMedico() {
     }
@@ -61,6 +110,12 @@ public class HistorialMedico implements Serializable {
         this.numero_consulta = numero_consulta;
     }
 
+    @PrePersist
+    @PreUpdate
+    protected void alEscribir() {
+        updatedAt = new Date();
+    }
+
     // Getters y Setters
 
     public Long getId() {
@@ -159,6 +214,10 @@ public class HistorialMedico implements Serializable {
         this.paciente = paciente;
     }
 
+    public Date getUpdatedAt() {
+        return updatedAt;
+    }
+
     public Odontograma getOdontograma() {
         return odontograma;
     }
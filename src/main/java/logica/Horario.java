@@ -6,8 +6,11 @@ import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import org.eclipse.persistence.annotations.Cache;
+import org.eclipse.persistence.annotations.CacheType;
 
 @Entity
+@Cache(type = CacheType.SOFT, size = 100, expiry = 3600000)
 public class Horario implements Serializable { // Cambiado a "Horario"
     
     @Id
@@ -0,0 +1,427 @@
+package logica;
+
+import Persistencia.ControladoraPersistencia;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+
+/**
+ * Importación masiva de pacientes, turnos y consultas desde CSV o NDJSON.
+ *
+ * La entrada se lee fila por fila (nunca entera en memoria), se valida y se
+ * inserta en lotes de LOTE filas, cada uno en su propia transacción. Si un
+ * lote falla se reintenta fila por fila para reportar solo las filas malas.
+ *
+ * Campos (los mismos nombres que usan los servlets):
+ * - paciente: dni, nombre, apellido, telefono, direccion, fecha_nac, email, obraSocial, antecedents
+ * - turno: dniPaciente, fecha, hora, duracion (minutos), motivo, estado, observaciones
+ * - historial: dni, fecha, numeroConsulta, motivo, diagnostico, tratamiento, medicamentos, notas, debe, haber, saldo
+ *
+ * En CSV la primera línea es el encabezado; en NDJSON cada línea es un objeto
+ * y puede traer su propio "tipo".
+ */
+public class Importador {
+
+    public static final int LOTE = 500;
+
+    private final ControladoraPersistencia controlPersis;
+
+    private final ResultadoImportacion resultado = new ResultadoImportacion();
+    private final Set<String> dnisImportados = new HashSet<>();
+    private final List<Fila> pendientes = new ArrayList<>();
+
+    public Importador(ControladoraPersistencia controlPersis) {
+        this.controlPersis = controlPersis;
+    }
+
+    public ResultadoImportacion importar(Reader entrada, String formato, String tipoPorDefecto) throws IOException {
+        BufferedReader reader = new BufferedReader(entrada);
+        if ("csv".equalsIgnoreCase(formato)) {
+            importarCsv(reader, tipoPorDefecto);
+        } else if ("ndjson".equalsIgnoreCase(formato)) {
+            importarNdjson(reader, tipoPorDefecto);
+        } else {
+            throw new IllegalArgumentException("Formato no soportado: " + formato);
+        }
+        vaciarLote();
+        controlPersis.finalizarImportacion();
+        return resultado;
+    }
+
+    // ============== LECTURA ==============
+
+    private void importarNdjson(BufferedReader reader, String tipoPorDefecto) throws IOException {
+        String linea;
+        int numero = 0;
+        while ((linea = reader.readLine()) != null) {
+            numero++;
+            if (linea.trim().isEmpty()) {
+                continue;
+            }
+            Map<String, String> campos;
+            try (JsonReader jsonReader = Json.createReader(new StringReader(linea))) {
+                campos = aMapa(jsonReader.readObject());
+            } catch (RuntimeException e) {
+                resultado.error(numero, "JSON inválido: " + e.getMessage());
+                continue;
+            }
+            agregar(numero, campos.getOrDefault("tipo", tipoPorDefecto), campos);
+        }
+    }
+
+    private void importarCsv(BufferedReader reader, String tipoPorDefecto) throws IOException {
+        int[] numero = { 0 };
+        List<String> encabezado = leerRegistroCsv(reader, numero);
+        if (encabezado == null) {
+            return;
+        }
+        List<String> valores;
+        while ((valores = leerRegistroCsv(reader, numero)) != null) {
+            if (valores.size() == 1 && valores.get(0).trim().isEmpty()) {
+                continue;
+            }
+            Map<String, String> campos = new HashMap<>();
+            for (int i = 0; i < encabezado.size() && i < valores.size(); i++) {
+                campos.put(encabezado.get(i).trim(), valores.get(i));
+            }
+            agregar(numero[0], campos.getOrDefault("tipo", tipoPorDefecto), campos);
+        }
+    }
+
+    // Un registro CSV (RFC 4180): comillas dobles, "" escapado y saltos de línea dentro de comillas
+    private List<String> leerRegistroCsv(BufferedReader reader, int[] numero) throws IOException {
+        String linea = reader.readLine();
+        if (linea == null) {
+            return null;
+        }
+        numero[0]++;
+        List<String> valores = new ArrayList<>();
+        StringBuilder actual = new StringBuilder();
+        boolean entreComillas = false;
+        while (true) {
+            for (int i = 0; i < linea.length(); i++) {
+                char c = linea.charAt(i);
+                if (entreComillas) {
+                    if (c == '"' && i + 1 < linea.length() && linea.charAt(i + 1) == '"') {
+                        actual.append('"');
+                        i++;
+                    } else if (c == '"') {
+                        entreComillas = false;
+                    } else {
+                        actual.append(c);
+                    }
+                } else if (c == '"') {
+                    entreComillas = true;
+                } else if (c == ',') {
+                    valores.add(actual.toString());
+                    actual.setLength(0);
+                } else {
+                    actual.append(c);
+                }
+            }
+            if (!entreComillas) {
+                break;
+            }
+            linea = reader.readLine();
+            if (linea == null) {
+                break;
+            }
+            actual.append('\n');
+        }
+        valores.add(actual.toString());
+        return valores;
+    }
+
+    private Map<String, String> aMapa(JsonObject json) {
+        Map<String, String> campos = new HashMap<>();
+        for (Map.Entry<String, JsonValue> e : json.entrySet()) {
+            JsonValue v = e.getValue();
+            if (v.getValueType() == JsonValue.ValueType.NULL) {
+                continue;
+            }
+            campos.put(e.getKey(), v.getValueType() == JsonValue.ValueType.STRING
+                    ? ((JsonString) v).getString()
+                    : v.toString());
+        }
+        return campos;
+    }
+
+    // ============== VALIDACIÓN ==============
+
+    private void agregar(int linea, String tipo, Map<String, String> campos) {
+        resultado.procesadas++;
+        try {
+            if (tipo == null) {
+                throw new IllegalArgumentException("Falta el tipo de fila (paciente, turno o historial)");
+            }
+            switch (tipo.toLowerCase()) {
+                case "paciente":
+                    Paciente p = crearPaciente(campos);
+                    if (!dnisImportados.add(p.getDniPaciente())) {
+                        resultado.duplicadas++;
+                        return;
+                    }
+                    pendientes.add(new Fila(linea, p, null));
+                    break;
+                case "turno":
+                    Turno t = crearTurno(campos);
+                    pendientes.add(new Fila(linea, t, t.getPacien().getDniPaciente()));
+                    break;
+                case "historial":
+                    HistorialMedico h = crearHistorial(campos);
+                    pendientes.add(new Fila(linea, h, h.getPaciente().getDniPaciente()));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Tipo de fila desconocido: " + tipo);
+            }
+        } catch (RuntimeException e) {
+            resultado.error(linea, e.getMessage());
+            return;
+        }
+        if (pendientes.size() >= LOTE) {
+            vaciarLote();
+        }
+    }
+
+    private Paciente crearPaciente(Map<String, String> c) {
+        String dni = primero(c, "dni", "dniPaciente");
+        Paciente p = new Paciente(requerido(dni, "dni"), requerido(c.get("nombre"), "nombre"),
+                requerido(c.get("apellido"), "apellido"));
+        p.setTelefono(c.get("telefono"));
+        p.setDireccion(c.get("direccion"));
+        p.setFecha_nac(fecha(c.get("fecha_nac"), "fecha_nac", false));
+        p.setEmail(c.get("email"));
+        p.setObraSocial(c.get("obraSocial"));
+        p.setAntecedents(vacio(c.get("antecedents")) ? "{}" : c.get("antecedents"));
+        return p;
+    }
+
+    private Turno crearTurno(Map<String, String> c) {
+        String dni = requerido(primero(c, "dniPaciente", "dni"), "dniPaciente");
+        Turno t = new Turno(fecha(c.get("fecha"), "fecha", true).toLocalDate(), requerido(c.get("hora"), "hora"),
+                c.get("motivo"), new Paciente(dni, null, null), c.get("observaciones"));
+        if (!vacio(c.get("duracion"))) {
+            double duracion = numero(c.get("duracion"), "duracion");
+            if (duracion != Math.rint(duracion)) {
+                throw new IllegalArgumentException("Duración inválida (minutos enteros): " + c.get("duracion"));
+            }
+            // Fuera de rango lo rechaza el Turno
+            t.setDuracionMinutos((int) duracion);
+        }
+        if (!vacio(c.get("estado"))) {
+            try {
+                t.setEstado(Turno.EstadoTurno.valueOf(c.get("estado").trim().toUpperCase()));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Estado de turno inválido: " + c.get("estado"));
+            }
+        }
+        return t;
+    }
+
+    private HistorialMedico crearHistorial(Map<String, String> c) {
+        String dni = requerido(primero(c, "dni", "dniPaciente"), "dni");
+        HistorialMedico h = new HistorialMedico(fecha(c.get("fecha"), "fecha", true),
+                requerido(c.get("motivo"), "motivo"), c.get("diagnostico"), c.get("tratamiento"),
+                c.get("medicamentos"), c.get("notas"), new Paciente(dni, null, null),
+                vacio(c.get("numeroConsulta")) ? null : Integer.valueOf(numero(c.get("numeroConsulta"), "numeroConsulta").intValue()));
+        h.setDebe(vacio(c.get("debe")) ? 0.0 : numero(c.get("debe"), "debe"));
+        h.setHaber(vacio(c.get("haber")) ? 0.0 : numero(c.get("haber"), "haber"));
+        h.setSaldo(vacio(c.get("saldo")) ? 0.0 : numero(c.get("saldo"), "saldo"));
+        return h;
+    }
+
+    private static String primero(Map<String, String> c, String clave, String alternativa) {
+        return vacio(c.get(clave)) ? c.get(alternativa) : c.get(clave);
+    }
+
+    private static boolean vacio(String valor) {
+        return valor == null || valor.trim().isEmpty();
+    }
+
+    private static String requerido(String valor, String campo) {
+        if (vacio(valor)) {
+            throw new IllegalArgumentException("Falta el campo " + campo);
+        }
+        return valor.trim();
+    }
+
+    private static java.sql.Date fecha(String valor, String campo, boolean obligatorio) {
+        if (vacio(valor)) {
+            if (obligatorio) {
+                throw new IllegalArgumentException("Falta el campo " + campo);
+            }
+            return null;
+        }
+        try {
+            return java.sql.Date.valueOf(valor.trim());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Fecha inválida en " + campo + " (yyyy-MM-dd): " + valor);
+        }
+    }
+
+    private static Double numero(String valor, String campo) {
+        try {
+            return Double.valueOf(valor.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Número inválido en " + campo + ": " + valor);
+        }
+    }
+
+    // ============== ESCRITURA ==============
+
+    private void vaciarLote() {
+        if (pendientes.isEmpty()) {
+            return;
+        }
+        List<Fila> lote = filtrarLote();
+        pendientes.clear();
+        if (lote.isEmpty()) {
+            return;
+        }
+
+        List<Object> entidades = new ArrayList<>(lote.size());
+        for (Fila f : lote) {
+            entidades.add(f.entidad);
+        }
+        try {
+            controlPersis.importarLote(entidades);
+            resultado.insertadas += lote.size();
+        } catch (RuntimeException e) {
+            // Reintento fila por fila para aislar las que fallan
+            for (Fila f : lote) {
+                reiniciarId(f.entidad);
+                try {
+                    List<Object> una = new ArrayList<>(1);
+                    una.add(f.entidad);
+                    controlPersis.importarLote(una);
+                    resultado.insertadas++;
+                } catch (RuntimeException ex) {
+                    if (f.entidad instanceof Paciente) {
+                        dnisImportados.remove(((Paciente) f.entidad).getDniPaciente());
+                    }
+                    resultado.error(f.linea, causa(ex));
+                }
+            }
+        }
+    }
+
+    // Tras un rollback las entidades con IDENTITY pueden haber quedado con id asignado
+    private static void reiniciarId(Object entidad) {
+        if (entidad instanceof Turno) {
+            ((Turno) entidad).setId_turno(0);
+        } else if (entidad instanceof HistorialMedico) {
+            ((HistorialMedico) entidad).setId(null);
+        }
+    }
+
+    // Descarta pacientes que ya existen en la base y turnos/consultas de pacientes inexistentes
+    private List<Fila> filtrarLote() {
+        Set<String> aConsultar = new HashSet<>();
+        Set<String> pacientesDelLote = new HashSet<>();
+        for (Fila f : pendientes) {
+            if (f.entidad instanceof Paciente) {
+                String dni = ((Paciente) f.entidad).getDniPaciente();
+                aConsultar.add(dni);
+                pacientesDelLote.add(dni);
+            }
+        }
+        for (Fila f : pendientes) {
+            if (f.dniPaciente != null && !pacientesDelLote.contains(f.dniPaciente)) {
+                aConsultar.add(f.dniPaciente);
+            }
+        }
+        Set<String> existentes = controlPersis.traerDnisExistentes(aConsultar);
+
+        List<Fila> lote = new ArrayList<>(pendientes.size());
+        for (Fila f : pendientes) {
+            if (f.entidad instanceof Paciente) {
+                if (existentes.contains(((Paciente) f.entidad).getDniPaciente())) {
+                    resultado.duplicadas++;
+                    continue;
+                }
+            } else if (!existentes.contains(f.dniPaciente) && !pacientesDelLote.contains(f.dniPaciente)) {
+                resultado.error(f.linea, "Paciente con DNI " + f.dniPaciente + " no existe");
+                continue;
+            }
+            lote.add(f);
+        }
+        return lote;
+    }
+
+    private static String causa(Throwable ex) {
+        Throwable raiz = ex;
+        while (raiz.getCause() != null && raiz.getCause() != raiz) {
+            raiz = raiz.getCause();
+        }
+        return raiz.getMessage() != null ? raiz.getMessage() : raiz.toString();
+    }
+
+    private static class Fila {
+
+        final int linea;
+        final Object entidad;
+        final String dniPaciente; // para turnos y consultas
+
+        Fila(int linea, Object entidad, String dniPaciente) {
+            this.linea = linea;
+            this.entidad = entidad;
+            this.dniPaciente = dniPaciente;
+        }
+    }
+
+    /**
+     * Resumen de una importación. Se guardan como máximo MAX_ERRORES errores
+     * detallados; el total se cuenta igual.
+     */
+    public static class ResultadoImportacion {
+
+        public static final int MAX_ERRORES = 1000;
+
+        private int procesadas;
+        private int insertadas;
+        private int duplicadas;
+        private int cantidadErrores;
+        private final Map<Integer, String> errores = new LinkedHashMap<>();
+
+        void error(int linea, String mensaje) {
+            cantidadErrores++;
+            if (errores.size() < MAX_ERRORES) {
+                errores.put(linea, mensaje);
+            }
+        }
+
+        public int getProcesadas() {
+            return procesadas;
+        }
+
+        public int getInsertadas() {
+            return insertadas;
+        }
+
+        public int getDuplicadas() {
+            return duplicadas;
+        }
+
+        public int getCantidadErrores() {
+            return cantidadErrores;
+        }
+
+        // línea -> mensaje
+        public Map<Integer, String> getErrores() {
+            return errores;
+        }
+    }
+}
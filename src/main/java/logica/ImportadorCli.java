@@ -0,0 +1,48 @@
+package logica;
+
+import Persistencia.ControladoraPersistencia;
+import Persistencia.Persistencia;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Map;
+
+/**
+ * Importación masiva desde la línea de comandos, con la conexión de persistence.xml:
+ *
+ * mvn -q compile exec:java -Dexec.mainClass=logica.ImportadorCli -Dexec.args="pacientes.csv paciente"
+ *
+ * El formato se deduce de la extensión (.csv o .ndjson/.jsonl); el tipo es
+ * opcional en NDJSON si cada línea trae "tipo".
+ */
+public class ImportadorCli {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Uso: ImportadorCli <archivo.csv|archivo.ndjson> [paciente|turno|historial]");
+            System.exit(1);
+        }
+        String archivo = args[0];
+        String tipo = args.length > 1 ? args[1] : null;
+        String formato = archivo.toLowerCase().endsWith(".csv") ? "csv" : "ndjson";
+
+        Controladora control = new Controladora();
+        long inicio = System.currentTimeMillis();
+        try (Reader entrada = Files.newBufferedReader(Paths.get(archivo), StandardCharsets.UTF_8)) {
+            Importador.ResultadoImportacion r = control.importar(entrada, formato, tipo);
+
+            System.out.println("Filas procesadas: " + r.getProcesadas());
+            System.out.println("Insertadas:       " + r.getInsertadas());
+            System.out.println("Duplicadas:       " + r.getDuplicadas());
+            System.out.println("Con error:        " + r.getCantidadErrores());
+            for (Map.Entry<Integer, String> e : r.getErrores().entrySet()) {
+                System.out.println("  línea " + e.getKey() + ": " + e.getValue());
+            }
+            System.out.println("Tiempo: " + (System.currentTimeMillis() - inicio) + " ms");
+        } finally {
+            Persistencia.closeEntityManagerFactory(ControladoraPersistencia.PERSISTENCE_UNIT);
+        }
+    }
+}
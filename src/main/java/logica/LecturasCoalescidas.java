@@ -0,0 +1,90 @@
+package logica;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Une lecturas idénticas concurrentes (single-flight): si llega una lectura
+ * con la misma clave (nombre + parámetros) mientras otra está en curso, espera
+ * ese resultado en lugar de repetir la consulta. Apenas termina, la clave se
+ * libera; no es una caché.
+ *
+ * El resultado se comparte entre todos los que esperaban, así que solo se usa
+ * con listados (DTO) que los servlets no modifican. Después de una escritura
+ * la Controladora llama a olvidar(): las lecturas que lleguen desde ahí abren
+ * una consulta nueva y ven el cambio.
+ */
+public class LecturasCoalescidas {
+
+    private final Map<List<Object>, CompletableFuture<Object>> enCurso = new ConcurrentHashMap<>();
+
+    private final AtomicLong llamadas = new AtomicLong();
+    private final AtomicLong compartidas = new AtomicLong();
+    private final Map<String, AtomicLong> compartidasPorLectura = new ConcurrentHashMap<>();
+
+    @SuppressWarnings("unchecked")
+    public <T> T leer(String nombre, Supplier<T> lectura, Object... parametros) {
+        llamadas.incrementAndGet();
+        List<Object> clave = new ArrayList<>(parametros.length + 1);
+        clave.add(nombre);
+        clave.addAll(Arrays.asList(parametros));
+        CompletableFuture<Object> propia = new CompletableFuture<>();
+        CompletableFuture<Object> existente = enCurso.putIfAbsent(clave, propia);
+        if (existente != null) {
+            compartidas.incrementAndGet();
+            compartidasPorLectura.computeIfAbsent(nombre, k -> new AtomicLong()).incrementAndGet();
+            return (T) esperar(existente);
+        }
+
+        try {
+            T resultado = lectura.get();
+            propia.complete(resultado);
+            return resultado;
+        } catch (RuntimeException | Error e) {
+            propia.completeExceptionally(e);
+            throw e;
+        } finally {
+            enCurso.remove(clave, propia);
+        }
+    }
+
+    // Las consultas en curso terminan igual, pero nadie más se suma a ellas
+    public void olvidar() {
+        enCurso.clear();
+    }
+
+    public Map<String, Object> metricas() {
+        Map<String, Object> metricas = new LinkedHashMap<>();
+        metricas.put("llamadas", llamadas.get());
+        metricas.put("consultas", llamadas.get() - compartidas.get());
+        metricas.put("compartidas", compartidas.get());
+        metricas.put("enCurso", enCurso.size());
+        for (Map.Entry<String, AtomicLong> e : compartidasPorLectura.entrySet()) {
+            metricas.put("compartidas." + e.getKey(), e.getValue().get());
+        }
+        return metricas;
+    }
+
+    // El error de la consulta original llega a cada uno de los que esperaban
+    private static Object esperar(CompletableFuture<Object> futuro) {
+        try {
+            return futuro.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
@@ -4,6 +4,16 @@ import java.io.Serializable;
 import javax.persistence.*;
 
 @Entity
+@Table(indexes = {
+        @Index(name = "idx_odontograma_historial", columnList = "historial_id")
+})
+@NamedQueries({
+        // Último odontograma del paciente: fecha de la consulta y, a igual fecha, la consulta más nueva
+        @NamedQuery(name = "Odontograma.findUltimoByPaciente", query = "SELECT o FROM Odontograma o "
+                + "JOIN o.historialMedico h "
+                + "WHERE h.paciente.dni = :dni "
+                + "ORDER BY h.fecha_registro DESC, h.id DESC")
+})
 public class Odontograma implements Serializable {
 
     @Id
@@ -1,21 +1,52 @@
 package logica;
 
+import java.text.Normalizer;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import javax.persistence.CascadeType;
+import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.OneToMany;
 import javax.persistence.OneToOne;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
 
 @Entity
+@Table(indexes = {
+        @Index(name = "idx_paciente_apellido_busq", columnList = "apellido_busqueda"),
+        @Index(name = "idx_paciente_nombre_busq", columnList = "nombre_busqueda"),
+        @Index(name = "idx_paciente_created_at", columnList = "created_at"),
+        @Index(name = "idx_paciente_updated_at", columnList = "updated_at")
+})
 public class Paciente extends Persona {
 
     private String email;
     private String obraSocial;
     private String antecedents; // Stores JSON string of medical antecedents
 
+    // Copias normalizadas (minúsculas, sin acentos) para la búsqueda indexada por prefijo
+    @Column(name = "nombre_busqueda")
+    private String nombreBusqueda;
+
+    @Column(name = "apellido_busqueda")
+    private String apellidoBusqueda;
+
+    // Fecha de alta, para listar los pacientes más recientes
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "created_at", updatable = false)
+    private Date createdAt;
+
+    // Última escritura, para la sincronización por ?since= (milisegundos: DATETIME(3))
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "updated_at", columnDefinition = "DATETIME(3)")
+    private Date updatedAt;
+
     @OneToOne
     @javax.persistence.JoinColumn(name = "unResponnsable_dni", referencedColumnName = "dni")
     private Responsable unResponnsable;
@@ -79,6 +110,53 @@ public class Paciente extends Persona {
         this.antecedents = antecedents;
     }
 
+    public String getNombreBusqueda() {
+        return nombreBusqueda;
+    }
+
+    public String getApellidoBusqueda() {
+        return apellidoBusqueda;
+    }
+
+    public Date getCreatedAt() {
+        return createdAt;
+    }
+
+    public Date getUpdatedAt() {
+        return updatedAt;
+    }
+
+    @PrePersist
+    protected void alCrear() {
+        if (createdAt == null) {
+            createdAt = new Date();
+        }
+        updatedAt = new Date();
+        actualizarCamposBusqueda();
+    }
+
+    @PreUpdate
+    protected void alModificar() {
+        updatedAt = new Date();
+        actualizarCamposBusqueda();
+    }
+
+    // Se recalculan en cada alta/edición a partir de nombre y apellido
+    public void actualizarCamposBusqueda() {
+        this.nombreBusqueda = normalizar(getNombre());
+        this.apellidoBusqueda = normalizar(getApellido());
+    }
+
+    // "Pérez" -> "perez"
+    public static String normalizar(String texto) {
+        if (texto == null) {
+            return null;
+        }
+        String sinAcentos = Normalizer.normalize(texto.trim(), Normalizer.Form.NFD)
+                .replaceAll("\\p{M}", "");
+        return sinAcentos.toLowerCase();
+    }
+
     public Responsable getUnResponnsable() {
         return unResponnsable;
     }
@@ -0,0 +1,62 @@
+package logica;
+
+import java.io.Serializable;
+import java.util.Date;
+
+// Fila del listado de pacientes: sin antecedentes ni colecciones (turnos, historiales)
+public class PacienteListado implements Serializable {
+
+    private final String dni;
+    private final String nombre;
+    private final String apellido;
+    private final String telefono;
+    private final String direccion;
+    private final Date fecha_nac;
+    private final String email;
+    private final String obraSocial;
+
+    // Usado por las consultas JPQL "SELECT NEW logica.PacienteListado(...)"
+    public PacienteListado(String dni, String nombre, String apellido, String telefono, String direccion,
+            Date fecha_nac, String email, String obraSocial) {
+        this.dni = dni;
+        this.nombre = nombre;
+        this.apellido = apellido;
+        this.telefono = telefono;
+        this.direccion = direccion;
+        this.fecha_nac = fecha_nac;
+        this.email = email;
+        this.obraSocial = obraSocial;
+    }
+
+    public String getDni() {
+        return dni;
+    }
+
+    public String getNombre() {
+        return nombre;
+    }
+
+    public String getApellido() {
+        return apellido;
+    }
+
+    public String getTelefono() {
+        return telefono;
+    }
+
+    public String getDireccion() {
+        return direccion;
+    }
+
+    public Date getFecha_nac() {
+        return fecha_nac;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public String getObraSocial() {
+        return obraSocial;
+    }
+}
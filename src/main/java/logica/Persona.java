@@ -8,9 +8,13 @@ import javax.persistence.Inheritance;
 import javax.persistence.InheritanceType;
 import javax.persistence.Temporal;
 import javax.persistence.TemporalType;
+import org.eclipse.persistence.annotations.Cache;
+import org.eclipse.persistence.annotations.CacheType;
 
 @Entity
 @Inheritance(strategy = InheritanceType.TABLE_PER_CLASS)
+// En herencia la caché se define en la raíz: la comparten Paciente y Responsable (10 min)
+@Cache(type = CacheType.SOFT, size = 2000, expiry = 600000)
 public class Persona implements Serializable {
 
     @Id
@@ -1,21 +1,122 @@
 package logica;
 
 import java.io.Serializable;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.Date;
+import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.EnumType;
 import javax.persistence.Enumerated;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
+import javax.persistence.QueryHint;
+import javax.persistence.Table;
 import javax.persistence.Temporal;
 import javax.persistence.TemporalType;
+import javax.persistence.UniqueConstraint;
+import javax.persistence.Version;
+import org.eclipse.persistence.annotations.Cache;
+import org.eclipse.persistence.annotations.CacheType;
+import org.eclipse.persistence.config.QueryHints;
 
 @Entity
+@Cache(type = CacheType.SOFT, size = 5000, expiry = 300000)
+@Table(indexes = {
+        @Index(name = "idx_turno_fecha", columnList = "fecha_Turno"),
+        @Index(name = "idx_turno_fecha_minuto", columnList = "fecha_Turno, minuto_inicio"),
+        @Index(name = "idx_turno_paciente_fecha", columnList = "id_paciente, fecha_Turno"),
+        @Index(name = "idx_turno_estado", columnList = "estado"),
+        @Index(name = "idx_turno_updated_at", columnList = "updated_at")
+}, uniqueConstraints = {
+        // Un turno activo por horario; los cancelados tienen ocupa_horario NULL y no cuentan.
+        // Sobre minuto_inicio y no sobre el texto: "9:00" y "09:00" son el mismo horario
+        @UniqueConstraint(name = Turno.RESTRICCION_HORARIO, columnNames = { "fecha_Turno", "minuto_inicio", "ocupa_horario" })
+})
+@NamedQueries({
+        // Rango inclusivo de días; para un solo día se usa desde == hasta
+        @NamedQuery(name = "Turno.findByRangoFecha", query = "SELECT t FROM Turno t "
+                + "WHERE t.fecha_Turno BETWEEN :desde AND :hasta "
+                + "ORDER BY t.fecha_Turno, t.minutoInicio", hints = {
+                        @QueryHint(name = QueryHints.QUERY_RESULTS_CACHE, value = "true"),
+                        @QueryHint(name = QueryHints.QUERY_RESULTS_CACHE_SIZE, value = "60"),
+                        @QueryHint(name = QueryHints.QUERY_RESULTS_CACHE_EXPIRY, value = "60000"),
+                        @QueryHint(name = QueryHints.QUERY_RESULTS_CACHE_INVALIDATE, value = "true")
+                }),
+        // Listados para la API: proyección a TurnoListado, sin hidratar el Paciente completo
+        @NamedQuery(name = "Turno.listar", query = "SELECT NEW logica.TurnoListado(t.id_turno, t.fecha_Turno, "
+                + "t.hora_Turno, t.afeccion, t.estado, t.observaciones, t.duracionMinutos, t.version, p.dni, p.nombre, p.apellido) "
+                + "FROM Turno t LEFT JOIN t.pacien p "
+                + "ORDER BY t.fecha_Turno, t.minutoInicio"),
+        @NamedQuery(name = "Turno.listarPorRangoFecha", query = "SELECT NEW logica.TurnoListado(t.id_turno, "
+                + "t.fecha_Turno, t.hora_Turno, t.afeccion, t.estado, t.observaciones, t.duracionMinutos, t.version, "
+                + "p.dni, p.nombre, p.apellido) "
+                + "FROM Turno t LEFT JOIN t.pacien p "
+                + "WHERE t.fecha_Turno BETWEEN :desde AND :hasta "
+                + "ORDER BY t.fecha_Turno, t.minutoInicio", hints = {
+                        @QueryHint(name = QueryHints.QUERY_RESULTS_CACHE, value = "true"),
+                        @QueryHint(name = QueryHints.QUERY_RESULTS_CACHE_SIZE, value = "60"),
+                        @QueryHint(name = QueryHints.QUERY_RESULTS_CACHE_EXPIRY, value = "60000"),
+                        @QueryHint(name = QueryHints.QUERY_RESULTS_CACHE_INVALIDATE, value = "true")
+                }),
+        // Paginación por cursor (fecha_Turno, id_turno): usa idx_turno_fecha, que incluye la PK
+        @NamedQuery(name = "Turno.listarPrimeraPagina", query = "SELECT NEW logica.TurnoListado(t.id_turno, "
+                + "t.fecha_Turno, t.hora_Turno, t.afeccion, t.estado, t.observaciones, t.duracionMinutos, t.version, "
+                + "p.dni, p.nombre, p.apellido) "
+                + "FROM Turno t LEFT JOIN t.pacien p "
+                + "ORDER BY t.fecha_Turno, t.id_turno"),
+        @NamedQuery(name = "Turno.listarPaginaDespuesDe", query = "SELECT NEW logica.TurnoListado(t.id_turno, "
+                + "t.fecha_Turno, t.hora_Turno, t.afeccion, t.estado, t.observaciones, t.duracionMinutos, t.version, "
+                + "p.dni, p.nombre, p.apellido) "
+                + "FROM Turno t LEFT JOIN t.pacien p "
+                + "WHERE t.fecha_Turno > :fecha OR (t.fecha_Turno = :fecha AND t.id_turno > :id) "
+                + "ORDER BY t.fecha_Turno, t.id_turno"),
+        // Sincronización por ?since=: usa idx_turno_updated_at
+        @NamedQuery(name = "Turno.listarModificadosDesde", query = "SELECT NEW logica.TurnoListado(t.id_turno, "
+                + "t.fecha_Turno, t.hora_Turno, t.afeccion, t.estado, t.observaciones, t.duracionMinutos, t.version, "
+                + "p.dni, p.nombre, p.apellido) "
+                + "FROM Turno t LEFT JOIN t.pacien p "
+                + "WHERE t.updatedAt >= :desde "
+                + "ORDER BY t.updatedAt, t.id_turno"),
+        // La fila lleva nombre y apellido: si cambió el paciente también cambió el turno.
+        // Consulta aparte (idx_paciente_updated_at + idx_turno_paciente_fecha) en lugar de un OR entre tablas
+        @NamedQuery(name = "Turno.listarDePacientesModificadosDesde", query = "SELECT NEW logica.TurnoListado("
+                + "t.id_turno, t.fecha_Turno, t.hora_Turno, t.afeccion, t.estado, t.observaciones, "
+                + "t.duracionMinutos, t.version, p.dni, p.nombre, p.apellido) "
+                + "FROM Turno t JOIN t.pacien p "
+                + "WHERE p.updatedAt >= :desde AND (t.updatedAt IS NULL OR t.updatedAt < :desde) "
+                + "ORDER BY t.id_turno"),
+        @NamedQuery(name = "Turno.findByPaciente", query = "SELECT t FROM Turno t "
+                + "WHERE t.pacien.dni = :dni "
+                + "ORDER BY t.fecha_Turno, t.minutoInicio", hints = {
+                        @QueryHint(name = QueryHints.QUERY_RESULTS_CACHE, value = "true"),
+                        @QueryHint(name = QueryHints.QUERY_RESULTS_CACHE_SIZE, value = "200"),
+                        @QueryHint(name = QueryHints.QUERY_RESULTS_CACHE_EXPIRY, value = "300000"),
+                        @QueryHint(name = QueryHints.QUERY_RESULTS_CACHE_INVALIDATE, value = "true")
+                })
+})
 public class Turno implements Serializable {
 
+    public static final String RESTRICCION_HORARIO = "uk_turno_minuto";
+    // La anterior, sobre hora_Turno; se borra de las bases que la tengan
+    public static final String RESTRICCION_HORARIO_TEXTO = "uk_turno_horario";
+    public static final int DURACION_DEFAULT_MINUTOS = 30;
+    public static final int DURACION_MAXIMA_MINUTOS = 480;
+
+    // Acepta "9:00", "09:00" y "09:00:00"; hora_Turno se guarda siempre como HH:mm
+    private static final DateTimeFormatter HORA_ENTRADA = DateTimeFormatter.ofPattern("H:mm[:ss]");
+    private static final DateTimeFormatter HORA_SALIDA = DateTimeFormatter.ofPattern("HH:mm");
+
     // Enum para el estado del turno
     public enum EstadoTurno {
         PENDIENTE,
@@ -28,9 +129,18 @@ public class Turno implements Serializable {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private int id_turno;
 
-    @Temporal(TemporalType.DATE)
-    private Date fecha_Turno;
+    private LocalDate fecha_Turno; // DATE (java.time, JPA 2.2)
+
+    // Texto HH:mm derivado de minutoInicio; los turnos previos pueden tenerlo como "9:00"
     private String hora_Turno;
+
+    // Minutos desde las 00:00: orden y filtros por hora en la base
+    @Column(name = "minuto_inicio")
+    private Integer minutoInicio;
+
+    @Column(name = "duracion_minutos", columnDefinition = "INT NOT NULL DEFAULT " + DURACION_DEFAULT_MINUTOS)
+    private int duracionMinutos = DURACION_DEFAULT_MINUTOS;
+
     private String afeccion;
 
     @Enumerated(EnumType.STRING)
@@ -38,24 +148,44 @@ public class Turno implements Serializable {
 
     private String observaciones;
 
+    // TRUE mientras el turno ocupa su horario, NULL si está cancelado (ver RESTRICCION_HORARIO)
+    @Column(name = "ocupa_horario")
+    private Boolean ocupaHorario;
+
+    // Bloqueo optimista; DEFAULT 0 para los turnos que ya existían al agregar la columna
+    @Version
+    @Column(name = "version", columnDefinition = "INT NOT NULL DEFAULT 0")
+    private int version;
+
+    // Última escritura, para la sincronización por ?since=
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "updated_at", columnDefinition = "DATETIME(3)")
+    private Date updatedAt;
+
     @ManyToOne
     @JoinColumn(name = "id_paciente", referencedColumnName = "dni") // Relación con la entidad Paciente
     private Paciente pacien;
 
     public Turno() {
-        this.estado = EstadoTurno.PENDIENTE; // Estado por defecto
+        setEstado(EstadoTurno.PENDIENTE); // Estado por defecto
     }
 
     // Constructor completo
-    public Turno(Date fecha_Turno, String hora_Turno, String afeccion, Paciente pacien, String observaciones) {
+    public Turno(LocalDate fecha_Turno, String hora_Turno, String afeccion, Paciente pacien, String observaciones) {
         this.fecha_Turno = fecha_Turno;
-        this.hora_Turno = hora_Turno;
+        setHora_Turno(hora_Turno);
         this.afeccion = afeccion;
         this.pacien = pacien;
-        this.estado = EstadoTurno.PENDIENTE;
+        setEstado(EstadoTurno.PENDIENTE);
         this.observaciones = observaciones;
     }
 
+    @PrePersist
+    @PreUpdate
+    protected void alEscribir() {
+        updatedAt = new Date();
+    }
+
     // Getters y Setters
     public int getId_turno() {
         return id_turno;
@@ -65,11 +195,11 @@ public class Turno implements Serializable {
         this.id_turno = id_turno;
     }
 
-    public Date getFecha_Turno() {
+    public LocalDate getFecha_Turno() {
         return fecha_Turno;
     }
 
-    public void setFecha_Turno(Date fecha_Turno) {
+    public void setFecha_Turno(LocalDate fecha_Turno) {
         this.fecha_Turno = fecha_Turno;
     }
 
@@ -77,8 +207,65 @@ public class Turno implements Serializable {
         return hora_Turno;
     }
 
+    // IllegalArgumentException si la hora no tiene formato H:mm
     public void setHora_Turno(String hora_Turno) {
-        this.hora_Turno = hora_Turno;
+        if (hora_Turno == null || hora_Turno.trim().isEmpty()) {
+            setHoraInicio(null);
+            return;
+        }
+        setHoraInicio(parsearHora(hora_Turno));
+    }
+
+    // Minutos desde las 00:00 para un texto de hora_Turno; IllegalArgumentException si no es H:mm
+    public static int minutoDe(String hora) {
+        LocalTime t = parsearHora(hora);
+        return t.getHour() * 60 + t.getMinute();
+    }
+
+    private static LocalTime parsearHora(String hora) {
+        try {
+            return LocalTime.parse(hora.trim(), HORA_ENTRADA);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Hora de turno inválida (HH:mm): " + hora, e);
+        }
+    }
+
+    public LocalTime getHoraInicio() {
+        return minutoInicio != null ? LocalTime.ofSecondOfDay(minutoInicio * 60L) : null;
+    }
+
+    public void setHoraInicio(LocalTime hora) {
+        this.minutoInicio = hora != null ? hora.getHour() * 60 + hora.getMinute() : null;
+        this.hora_Turno = hora != null ? hora.format(HORA_SALIDA) : null;
+    }
+
+    public Integer getMinutoInicio() {
+        return minutoInicio;
+    }
+
+    // true si los dos ocupan horario el mismo día y sus intervalos [inicio, inicio + duración) se pisan.
+    // uk_turno_minuto solo impide el mismo inicio: esto cubre un turno de 60' a las 9:00 y otro a las 9:30
+    public boolean seSolapaCon(Turno otro) {
+        if (otro == null || minutoInicio == null || otro.minutoInicio == null
+                || !Boolean.TRUE.equals(ocupaHorario) || !Boolean.TRUE.equals(otro.ocupaHorario)
+                || fecha_Turno == null || !fecha_Turno.equals(otro.fecha_Turno)) {
+            return false;
+        }
+        return minutoInicio < otro.minutoInicio + otro.duracionMinutos
+                && otro.minutoInicio < minutoInicio + duracionMinutos;
+    }
+
+    public int getDuracionMinutos() {
+        return duracionMinutos;
+    }
+
+    // IllegalArgumentException fuera de 1..DURACION_MAXIMA_MINUTOS (la agenda no puede ubicarlo)
+    public void setDuracionMinutos(int duracionMinutos) {
+        if (duracionMinutos < 1 || duracionMinutos > DURACION_MAXIMA_MINUTOS) {
+            throw new IllegalArgumentException("La duración debe estar entre 1 y " + DURACION_MAXIMA_MINUTOS
+                    + " minutos: " + duracionMinutos);
+        }
+        this.duracionMinutos = duracionMinutos;
     }
 
     public String getAfeccion() {
@@ -95,6 +282,23 @@ public class Turno implements Serializable {
 
     public void setEstado(EstadoTurno estado) {
         this.estado = estado;
+        this.ocupaHorario = estado == EstadoTurno.CANCELADO ? null : Boolean.TRUE;
+    }
+
+    public Boolean getOcupaHorario() {
+        return ocupaHorario;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public void setVersion(int version) {
+        this.version = version;
+    }
+
+    public Date getUpdatedAt() {
+        return updatedAt;
     }
 
     public String getObservaciones() {
@@ -0,0 +1,81 @@
+package logica;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+// Fila del listado de turnos: datos del turno y solo DNI, nombre y apellido del paciente
+public class TurnoListado implements Serializable {
+
+    private final int id;
+    private final LocalDate fecha;
+    private final String hora;
+    private final String afeccion;
+    private final Turno.EstadoTurno estado;
+    private final String observaciones;
+    private final int duracionMinutos;
+    private final int version;
+    private final String dniPaciente;
+    private final String nombrePaciente;
+    private final String apellidoPaciente;
+
+    // Usado por las consultas JPQL "SELECT NEW logica.TurnoListado(...)"
+    public TurnoListado(int id, LocalDate fecha, String hora, String afeccion, Turno.EstadoTurno estado,
+            String observaciones, int duracionMinutos, int version, String dniPaciente, String nombrePaciente,
+            String apellidoPaciente) {
+        this.id = id;
+        this.fecha = fecha;
+        this.hora = hora;
+        this.afeccion = afeccion;
+        this.estado = estado;
+        this.observaciones = observaciones;
+        this.duracionMinutos = duracionMinutos;
+        this.version = version;
+        this.dniPaciente = dniPaciente;
+        this.nombrePaciente = nombrePaciente;
+        this.apellidoPaciente = apellidoPaciente;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public LocalDate getFecha() {
+        return fecha;
+    }
+
+    public String getHora() {
+        return hora;
+    }
+
+    public String getAfeccion() {
+        return afeccion;
+    }
+
+    public Turno.EstadoTurno getEstado() {
+        return estado;
+    }
+
+    public String getObservaciones() {
+        return observaciones;
+    }
+
+    public int getDuracionMinutos() {
+        return duracionMinutos;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public String getDniPaciente() {
+        return dniPaciente;
+    }
+
+    public String getNombrePaciente() {
+        return nombrePaciente;
+    }
+
+    public String getApellidoPaciente() {
+        return apellidoPaciente;
+    }
+}
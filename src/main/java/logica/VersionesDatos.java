@@ -0,0 +1,83 @@
+package logica;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sellos de versión de los datos que sirven los listados, para ETag y
+ * Last-Modified: uno por colección y uno por paciente (su ficha y su historia
+ * clínica). La Controladora los avanza después de cada escritura confirmada,
+ * así un sello nunca queda asociado a datos anteriores a él.
+ *
+ * Cada sello es un instante en segundos enteros (en milisegundos), estrictamente
+ * creciente, que sirve a la vez de versión y de fecha de modificación. Van de a
+ * segundo porque Last-Modified e If-Modified-Since no llevan milisegundos: dos
+ * escrituras en el mismo segundo no pueden compartir fecha. En una ráfaga el
+ * sello puede adelantarse unos segundos al reloj. Al arrancar todos valen la
+ * hora de inicio: después de reiniciar ningún ETag viejo coincide.
+ *
+ * Los sellos viven en la memoria de esta JVM: suponen un solo servidor contra
+ * la base. Lo que escriba otro nodo o SQL directo no los avanza; eso se ve
+ * recién en la reconciliación periódica (ContenedorAplicacion), que los avanza
+ * todos. Las escrituras masivas de la propia aplicación (importación,
+ * migraciones de arranque) llaman a todoModificado().
+ */
+public class VersionesDatos {
+
+    public enum Coleccion {
+        PACIENTES, TURNOS, HISTORIALES
+    }
+
+    private final AtomicLong ultimo = new AtomicLong(segundoActual());
+    private final Map<Coleccion, Long> colecciones = new EnumMap<>(Coleccion.class);
+    private final Map<String, Long> pacientes = new ConcurrentHashMap<>();
+    // Sello mínimo de cualquier paciente: lo sube una escritura masiva (importación)
+    private volatile long pisoPacientes;
+
+    public VersionesDatos() {
+        long inicio = ultimo.get();
+        for (Coleccion c : Coleccion.values()) {
+            colecciones.put(c, inicio);
+        }
+        pisoPacientes = inicio;
+    }
+
+    public synchronized long coleccion(Coleccion c) {
+        return colecciones.get(c);
+    }
+
+    public long paciente(String dni) {
+        Long sello = dni != null ? pacientes.get(dni) : null;
+        return sello != null ? Math.max(sello, pisoPacientes) : pisoPacientes;
+    }
+
+    public synchronized void modificado(Coleccion c) {
+        colecciones.put(c, siguiente());
+    }
+
+    public void pacienteModificado(String dni) {
+        if (dni != null) {
+            pacientes.put(dni, siguiente());
+        }
+    }
+
+    public synchronized void todoModificado() {
+        long sello = siguiente();
+        for (Coleccion c : Coleccion.values()) {
+            colecciones.put(c, sello);
+        }
+        pacientes.clear();
+        pisoPacientes = sello;
+    }
+
+    private long siguiente() {
+        return ultimo.updateAndGet(v -> Math.max(v + 1000, segundoActual()));
+    }
+
+    private static long segundoActual() {
+        long ahora = System.currentTimeMillis();
+        return ahora - ahora % 1000;
+    }
+}
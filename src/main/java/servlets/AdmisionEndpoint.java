@@ -0,0 +1,177 @@
+package servlets;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.json.Json;
+import javax.json.JsonObjectBuilder;
+import javax.servlet.ServletConfig;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Control de admisión de un servlet: cuántas peticiones suyas pueden estar a
+ * la vez en los EjecutoresBaseDatos y cuánto pueden esperar en cola. Lo que
+ * excede el límite se rechaza enseguida con 503 y Retry-After, sin ocupar un
+ * hilo ni una conexión.
+ *
+ * Lecturas: límite adaptativo (AIMD). Sube de a poco mientras la latencia
+ * queda bajo el objetivo y baja un 25% cuando lo supera o la petición venció
+ * en cola, así una ráfaga de un endpoint lento (historia clínica) no se lleva
+ * las conexiones del resto.
+ *
+ * Escrituras: límite fijo, más espera en cola y ejecutor propio; la latencia
+ * de las lecturas no las frena, así sacar o guardar un turno sigue andando
+ * cuando se recortan las lecturas.
+ *
+ * Se configura con init-param del servlet en web.xml (admision.*).
+ */
+public class AdmisionEndpoint {
+
+    private static final Logger LOG = Logger.getLogger(AdmisionEndpoint.class.getName());
+
+    private static final double REDUCCION = 0.75;
+    private static final long RETRY_AFTER_MAX_SEGUNDOS = 30;
+
+    private final String nombre;
+    private final EjecutoresBaseDatos ejecutores;
+
+    private final int lecturasMinimo;
+    private final int lecturasMaximo;
+    private final long latenciaObjetivoMs;
+    private final long esperaLecturaMs;
+    private final int escriturasMaximo;
+    private final long esperaEscrituraMs;
+
+    // Protegidos por this
+    private double limiteLecturas;
+    private int lecturasEnCurso;
+    private int escriturasEnCurso;
+    private double latenciaMediaMs;
+
+    private final AtomicLong admitidas = new AtomicLong();
+    private final AtomicLong rechazadasPorLimite = new AtomicLong();
+    private final AtomicLong sobreObjetivo = new AtomicLong();
+
+    AdmisionEndpoint(ServletConfig config, EjecutoresBaseDatos ejecutores) {
+        this.nombre = config.getServletName();
+        this.ejecutores = ejecutores;
+        this.lecturasMaximo = (int) leer(config, "admision.lecturas.maximo", 8);
+        this.lecturasMinimo = (int) Math.min(lecturasMaximo, leer(config, "admision.lecturas.minimo", 1));
+        this.latenciaObjetivoMs = leer(config, "admision.latencia.objetivo.ms", 500);
+        this.esperaLecturaMs = leer(config, "admision.lecturas.espera.ms", 3000);
+        this.escriturasMaximo = (int) leer(config, "admision.escrituras.maximo", 4);
+        this.esperaEscrituraMs = leer(config, "admision.escrituras.espera.ms", 10000);
+        this.limiteLecturas = lecturasMaximo;
+    }
+
+    public void lectura(HttpServletRequest request, HttpServletResponse response,
+            EjecutoresBaseDatos.Manejador manejador) {
+        if (!admitirLectura()) {
+            rechazadasPorLimite.incrementAndGet();
+            EjecutoresBaseDatos.rechazar(response, retryAfterSegundos());
+            return;
+        }
+        admitidas.incrementAndGet();
+        ejecutores.despachar(false, request, response, esperaLecturaMs, retryAfterSegundos(), manejador,
+                this::lecturaTerminada);
+    }
+
+    public void escritura(HttpServletRequest request, HttpServletResponse response,
+            EjecutoresBaseDatos.Manejador manejador) {
+        if (!admitirEscritura()) {
+            rechazadasPorLimite.incrementAndGet();
+            EjecutoresBaseDatos.rechazar(response, retryAfterSegundos());
+            return;
+        }
+        admitidas.incrementAndGet();
+        ejecutores.despachar(true, request, response, esperaEscrituraMs, retryAfterSegundos(), manejador,
+                this::escrituraTerminada);
+    }
+
+    private synchronized boolean admitirLectura() {
+        if (lecturasEnCurso >= (int) limiteLecturas) {
+            return false;
+        }
+        lecturasEnCurso++;
+        return true;
+    }
+
+    private synchronized boolean admitirEscritura() {
+        if (escriturasEnCurso >= escriturasMaximo) {
+            return false;
+        }
+        escriturasEnCurso++;
+        return true;
+    }
+
+    // atendida == false: venció en cola o el ejecutor la rechazó (sobrecarga)
+    private synchronized void lecturaTerminada(long nanos, boolean atendida) {
+        lecturasEnCurso--;
+        long ms = TimeUnit.NANOSECONDS.toMillis(nanos);
+        if (atendida) {
+            registrarLatencia(ms);
+        }
+        if (!atendida || ms > latenciaObjetivoMs) {
+            sobreObjetivo.incrementAndGet();
+            limiteLecturas = Math.max(lecturasMinimo, limiteLecturas * REDUCCION);
+        } else {
+            limiteLecturas = Math.min(lecturasMaximo, limiteLecturas + 1.0 / limiteLecturas);
+        }
+    }
+
+    private synchronized void escrituraTerminada(long nanos, boolean atendida) {
+        escriturasEnCurso--;
+        if (atendida) {
+            registrarLatencia(TimeUnit.NANOSECONDS.toMillis(nanos));
+        }
+    }
+
+    // Media móvil exponencial de lo que tarda una petición atendida (cola + ejecución)
+    private void registrarLatencia(long ms) {
+        latenciaMediaMs = latenciaMediaMs == 0 ? ms : latenciaMediaMs * 0.9 + ms * 0.1;
+    }
+
+    // Lo que tardaría en liberarse un lugar: la latencia media, entre 1 y 30 segundos
+    private synchronized long retryAfterSegundos() {
+        long segundos = (long) Math.ceil(latenciaMediaMs / 1000.0);
+        return Math.max(1, Math.min(RETRY_AFTER_MAX_SEGUNDOS, segundos));
+    }
+
+    public synchronized JsonObjectBuilder metricas() {
+        return Json.createObjectBuilder()
+                .add("limiteLecturas", (int) limiteLecturas)
+                .add("lecturasEnCurso", lecturasEnCurso)
+                .add("limiteEscrituras", escriturasMaximo)
+                .add("escriturasEnCurso", escriturasEnCurso)
+                .add("admitidas", admitidas.get())
+                .add("rechazadasPorLimite", rechazadasPorLimite.get())
+                .add("sobreObjetivo", sobreObjetivo.get())
+                .add("latenciaMediaMs", Math.round(latenciaMediaMs));
+    }
+
+    public String getNombre() {
+        return nombre;
+    }
+
+    private static long leer(ServletConfig config, String parametro, long porDefecto) {
+        String valor = config.getInitParameter(parametro);
+        if (valor != null) {
+            // Igual que en ContenedorAplicacion: un máximo en 0 rechazaría todo y una espera
+            // negativa rompe el timeout del AsyncContext
+            try {
+                long numero = Long.parseLong(valor.trim());
+                if (numero >= 1) {
+                    return numero;
+                }
+                LOG.log(Level.WARNING, "{0}: {1} debe ser mayor a 0: {2}, se usa {3}",
+                        new Object[] { config.getServletName(), parametro, valor, porDefecto });
+            } catch (NumberFormatException e) {
+                LOG.log(Level.WARNING, "{0}: {1} inválido: {2}, se usa {3}",
+                        new Object[] { config.getServletName(), parametro, valor, porDefecto });
+            }
+        }
+        return porDefecto;
+    }
+}
@@ -0,0 +1,207 @@
+package servlets;
+
+import Persistencia.ControladoraPersistencia;
+import Persistencia.DataSourceMedido;
+import Persistencia.Persistencia;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import javax.persistence.EntityManagerFactory;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.sql.DataSource;
+import logica.Controladora;
+
+/**
+ * Contenedor de la aplicación: crea una sola vez la EntityManagerFactory y la
+ * Controladora que comparten todos los servlets, y cierra la fábrica al bajar
+ * la aplicación. Registrado como listener en web.xml.
+ *
+ * Si el servidor publica el pool jdbc/ConsulOdontDS (META-INF/context.xml) se
+ * usa ese DataSource, medido con DataSourceMedido; si no, EclipseLink usa su
+ * pool interno con la configuración de persistence.xml.
+ *
+ * También programa la reconciliación de los contadores del dashboard, la
+ * agenda y los sellos de ETag: cada dashboard.reconciliacion.minutos
+ * (context-param) y, los contadores, también al pasar la medianoche.
+ * Una vez por día purga las bajas más viejas que bajas.retencion.dias.
+ *
+ * Los servlets que van a la base atienden en los EjecutoresBaseDatos (bd.*
+ * en web.xml) en lugar de ocupar hilos de Tomcat.
+ *
+ * El DifusorEventos queda suscripto a la Controladora y reparte sus cambios a
+ * los navegadores conectados a SvEventos (eventos.* en web.xml).
+ */
+public class ContenedorAplicacion implements ServletContextListener {
+
+    private static final Logger LOG = Logger.getLogger(ContenedorAplicacion.class.getName());
+    private static final String ATRIBUTO = ContenedorAplicacion.class.getName();
+    private static final String JNDI_DATASOURCE = "java:comp/env/jdbc/ConsulOdontDS";
+    private static final long RECONCILIACION_MINUTOS_DEFAULT = 5;
+    private static final long RETENCION_BAJAS_DIAS_DEFAULT = 30;
+    // Entre los dos ejecutores quedan por debajo del máximo del pool (20) para
+    // dejar conexiones a las lecturas paralelas del dashboard y a las tareas
+    private static final long HILOS_LECTURA_DEFAULT = 10;
+    private static final long HILOS_ESCRITURA_DEFAULT = 4;
+    private static final long COLA_DEFAULT = 100;
+    private static final long EVENTOS_CLIENTES_DEFAULT = 500;
+    private static final long EVENTOS_PENDIENTES_DEFAULT = 100;
+
+    private DataSourceMedido dataSource;
+    private EntityManagerFactory emf;
+    private ControladoraPersistencia controlPersis;
+    private Controladora control;
+    private ScheduledExecutorService tareas;
+    private EjecutoresBaseDatos ejecutores;
+    private DifusorEventos difusor;
+
+    public static ContenedorAplicacion get(ServletContext context) {
+        ContenedorAplicacion contenedor = (ContenedorAplicacion) context.getAttribute(ATRIBUTO);
+        if (contenedor == null) {
+            throw new IllegalStateException("ContenedorAplicacion no fue inicializado (revisar listener en web.xml)");
+        }
+        return contenedor;
+    }
+
+    @Override
+    public void contextInitialized(ServletContextEvent sce) {
+        System.out.println("Iniciando ContenedorAplicacion...");
+        Map<String, Object> propiedades = new HashMap<>();
+        DataSource pool = buscarDataSource();
+        if (pool != null) {
+            dataSource = new DataSourceMedido(pool);
+            propiedades.put("javax.persistence.nonJtaDataSource", dataSource);
+        }
+        if (Boolean.parseBoolean(sce.getServletContext().getInitParameter("bd.perfilador"))) {
+            propiedades.put("eclipselink.profiler", "PerformanceMonitor");
+        }
+        emf = Persistencia.createEntityManagerFactory(ControladoraPersistencia.PERSISTENCE_UNIT, propiedades);
+        controlPersis = new ControladoraPersistencia(emf);
+        control = new Controladora(controlPersis);
+
+        control.normalizarBusquedaPacientes();
+        control.completarMinutosTurnos();
+        control.marcarHorariosOcupados();
+        control.completarFechasModificacion();
+        control.crearIndicesFaltantes();
+        programarTareas(sce.getServletContext());
+        ejecutores = crearEjecutores(sce.getServletContext());
+        difusor = new DifusorEventos(
+                (int) leerParametro(sce.getServletContext(), "eventos.clientes.maximo", EVENTOS_CLIENTES_DEFAULT),
+                (int) leerParametro(sce.getServletContext(), "eventos.pendientes", EVENTOS_PENDIENTES_DEFAULT));
+        control.suscribirEventos(difusor);
+
+        sce.getServletContext().setAttribute(ATRIBUTO, this);
+        System.out.println("ContenedorAplicacion iniciado correctamente");
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+        sce.getServletContext().removeAttribute(ATRIBUTO);
+        if (tareas != null) {
+            tareas.shutdownNow();
+        }
+        if (difusor != null) {
+            control.desuscribirEventos(difusor);
+            difusor.cerrar();
+        }
+        if (ejecutores != null) {
+            ejecutores.cerrar();
+        }
+        if (control != null) {
+            control.cerrar();
+        }
+        Persistencia.closeEntityManagerFactory(ControladoraPersistencia.PERSISTENCE_UNIT);
+        System.out.println("ContenedorAplicacion detenido");
+    }
+
+    private void programarTareas(ServletContext context) {
+        long minutos = leerParametro(context, "dashboard.reconciliacion.minutos", RECONCILIACION_MINUTOS_DEFAULT);
+
+        tareas = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "consultorio-tareas");
+            t.setDaemon(true);
+            return t;
+        });
+        tareas.scheduleWithFixedDelay(control::reconciliarEstadisticas, minutos, minutos, TimeUnit.MINUTES);
+        tareas.scheduleWithFixedDelay(control::reconciliarAgenda, minutos, minutos, TimeUnit.MINUTES);
+        tareas.scheduleWithFixedDelay(control::reconciliarVersiones, minutos, minutos, TimeUnit.MINUTES);
+
+        // La primera purga fija desde cuándo se puede pedir ?since=; hasta entonces se responde 410
+        int retencion = (int) leerParametro(context, "bajas.retencion.dias", RETENCION_BAJAS_DIAS_DEFAULT);
+        tareas.scheduleWithFixedDelay(() -> control.purgarBajas(retencion), 0, 1, TimeUnit.DAYS);
+
+        // Cambio de día: "turnos hoy" y, a fin de mes, "consultas del mes"
+        long hastaMedianoche = Duration.between(LocalDateTime.now(),
+                LocalDate.now().plusDays(1).atStartOfDay()).toMillis();
+        tareas.scheduleAtFixedRate(control::reconciliarEstadisticas,
+                hastaMedianoche + 1000, TimeUnit.DAYS.toMillis(1), TimeUnit.MILLISECONDS);
+    }
+
+    private EjecutoresBaseDatos crearEjecutores(ServletContext context) {
+        return new EjecutoresBaseDatos(
+                (int) leerParametro(context, "bd.lecturas.hilos", HILOS_LECTURA_DEFAULT),
+                (int) leerParametro(context, "bd.escrituras.hilos", HILOS_ESCRITURA_DEFAULT),
+                (int) leerParametro(context, "bd.cola", COLA_DEFAULT));
+    }
+
+    // Todos son períodos, tamaños o cantidades: un valor menor a 1 (que haría fallar
+    // al scheduler o a la cola al arrancar) se descarta y se usa el valor por defecto
+    private static long leerParametro(ServletContext context, String nombre, long porDefecto) {
+        String param = context.getInitParameter(nombre);
+        if (param != null) {
+            try {
+                long valor = Long.parseLong(param.trim());
+                if (valor >= 1) {
+                    return valor;
+                }
+                LOG.log(Level.WARNING, "{0} debe ser mayor a 0: {1}, se usa {2}", new Object[] { nombre, param, porDefecto });
+            } catch (NumberFormatException e) {
+                LOG.log(Level.WARNING, "{0} inválido: {1}, se usa {2}", new Object[] { nombre, param, porDefecto });
+            }
+        }
+        return porDefecto;
+    }
+
+    private DataSource buscarDataSource() {
+        try {
+            DataSource ds = (DataSource) new InitialContext().lookup(JNDI_DATASOURCE);
+            System.out.println("Usando pool de conexiones JNDI: " + JNDI_DATASOURCE);
+            return ds;
+        } catch (NamingException e) {
+            System.out.println("Pool JNDI " + JNDI_DATASOURCE + " no disponible, se usa el pool interno de EclipseLink");
+            return null;
+        }
+    }
+
+    // null cuando se usa el pool interno de EclipseLink
+    public DataSourceMedido getDataSource() {
+        return dataSource;
+    }
+
+    public EntityManagerFactory getEntityManagerFactory() {
+        return emf;
+    }
+
+    public EjecutoresBaseDatos getEjecutores() {
+        return ejecutores;
+    }
+
+    public DifusorEventos getDifusor() {
+        return difusor;
+    }
+
+    public Controladora getControladora() {
+        return control;
+    }
+}
@@ -0,0 +1,242 @@
+package servlets;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.json.Json;
+import javax.json.JsonObjectBuilder;
+import javax.json.stream.JsonGenerator;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import logica.EventoCambio;
+
+/**
+ * Reparte los EventoCambio de la Controladora a los navegadores conectados a
+ * SvEventos (server-sent events).
+ *
+ * Cada evento se serializa una sola vez y los mismos bytes se encolan en cada
+ * cliente. La escritura es no bloqueante (WriteListener): quien publica nunca
+ * espera a un cliente lento, y ningún hilo queda tomado por conexión. La cola
+ * de cada cliente está acotada; si se llena, el cliente se desconecta y al
+ * reconectarse (EventSource lo hace solo) vuelve a pedir los listados.
+ *
+ * Cada LATIDO_SEGUNDOS se manda un comentario para que los proxies no corten
+ * la conexión y para detectar clientes que ya no están.
+ */
+public class DifusorEventos implements Consumer<EventoCambio> {
+
+    private static final Logger LOG = Logger.getLogger(DifusorEventos.class.getName());
+
+    private static final long LATIDO_SEGUNDOS = 20;
+    private static final byte[] LATIDO = ":\n\n".getBytes(StandardCharsets.UTF_8);
+    // Reintento sugerido al EventSource tras un corte
+    private static final byte[] INICIO = "retry: 5000\n\n".getBytes(StandardCharsets.UTF_8);
+
+    private final int maximoClientes;
+    private final int pendientesPorCliente;
+    private final Map<Cliente, Boolean> clientes = new ConcurrentHashMap<>();
+    // Lugares tomados: se reservan antes de agregar al cliente, así dos conexiones
+    // simultáneas no pasan las dos con el último lugar libre
+    private final AtomicInteger conectados = new AtomicInteger();
+    private final ScheduledExecutorService latidos;
+
+    private final AtomicLong publicados = new AtomicLong();
+    private final AtomicLong desconectadosPorLentitud = new AtomicLong();
+
+    public DifusorEventos(int maximoClientes, int pendientesPorCliente) {
+        this.maximoClientes = maximoClientes;
+        this.pendientesPorCliente = pendientesPorCliente;
+        this.latidos = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "eventos-latido");
+            t.setDaemon(true);
+            return t;
+        });
+        latidos.scheduleWithFixedDelay(() -> difundir(LATIDO), LATIDO_SEGUNDOS, LATIDO_SEGUNDOS, TimeUnit.SECONDS);
+    }
+
+    // false si ya se alcanzó maximoClientes (SvEventos responde 503)
+    boolean conectar(AsyncContext async) throws IOException {
+        if (conectados.incrementAndGet() > maximoClientes) {
+            conectados.decrementAndGet();
+            return false;
+        }
+        Cliente cliente;
+        try {
+            cliente = new Cliente(async);
+        } catch (IOException | RuntimeException e) {
+            conectados.decrementAndGet();
+            throw e;
+        }
+        clientes.put(cliente, Boolean.TRUE);
+        async.addListener(cliente);
+        cliente.encolar(INICIO);
+        // A partir de acá el contenedor llama a onWritePossible cuando se puede escribir
+        cliente.salida.setWriteListener(cliente);
+        return true;
+    }
+
+    @Override
+    public void accept(EventoCambio evento) {
+        publicados.incrementAndGet();
+        difundir(serializar(evento));
+    }
+
+    private void difundir(byte[] mensaje) {
+        for (Cliente cliente : clientes.keySet()) {
+            if (!cliente.encolar(mensaje)) {
+                desconectadosPorLentitud.incrementAndGet();
+                cliente.cerrar();
+            }
+        }
+    }
+
+    // event: turno-creado / data: {...}
+    private static byte[] serializar(EventoCambio evento) {
+        StringWriter datos = new StringWriter();
+        try (JsonGenerator g = Json.createGenerator(datos)) {
+            if (evento.getTurno() != null) {
+                SvTurno.escribir(g, evento.getTurno());
+            } else if (evento.getPaciente() != null) {
+                SvPaciente.escribirListado(g, evento.getPaciente());
+            } else if (evento.getIdTurno() != null) {
+                g.writeStartObject().write("id", evento.getIdTurno()).writeEnd();
+            } else {
+                g.writeStartObject().writeEnd();
+            }
+        }
+        String nombre = evento.getTipo().name().toLowerCase(Locale.ROOT).replace('_', '-');
+        return ("event: " + nombre + "\ndata: " + datos + "\n\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Libera el lugar una sola vez, cierre o onComplete lo que llegue primero
+    private void quitar(Cliente cliente) {
+        if (clientes.remove(cliente) != null) {
+            conectados.decrementAndGet();
+        }
+    }
+
+    public void cerrar() {
+        latidos.shutdownNow();
+        for (Cliente cliente : clientes.keySet()) {
+            cliente.cerrar();
+        }
+    }
+
+    public JsonObjectBuilder metricas() {
+        return Json.createObjectBuilder()
+                .add("clientes", conectados.get())
+                .add("maximoClientes", maximoClientes)
+                .add("publicados", publicados.get())
+                .add("desconectadosPorLentitud", desconectadosPorLentitud.get());
+    }
+
+    /**
+     * Una conexión abierta: sus mensajes pendientes y la salida no bloqueante.
+     * Todo se sincroniza sobre el cliente: publican hilos de los ejecutores y
+     * el contenedor llama a onWritePossible desde los suyos.
+     */
+    private class Cliente implements WriteListener, AsyncListener {
+
+        private final AsyncContext async;
+        private final ServletOutputStream salida;
+        private final ArrayDeque<byte[]> pendientes = new ArrayDeque<>();
+        private boolean escuchando;
+        private boolean cerrado;
+
+        Cliente(AsyncContext async) throws IOException {
+            this.async = async;
+            this.salida = async.getResponse().getOutputStream();
+        }
+
+        // false si la cola está llena: el cliente no da abasto
+        synchronized boolean encolar(byte[] mensaje) {
+            if (cerrado) {
+                return true;
+            }
+            if (pendientes.size() >= pendientesPorCliente) {
+                return false;
+            }
+            pendientes.add(mensaje);
+            if (escuchando) {
+                escribir();
+            }
+            return true;
+        }
+
+        @Override
+        public synchronized void onWritePossible() {
+            escuchando = true;
+            escribir();
+        }
+
+        // Solo mientras isReady(): cuando devuelve false el contenedor vuelve a llamar a onWritePossible
+        private void escribir() {
+            try {
+                while (!cerrado && salida.isReady()) {
+                    byte[] mensaje = pendientes.poll();
+                    if (mensaje == null) {
+                        salida.flush();
+                        return;
+                    }
+                    salida.write(mensaje);
+                }
+            } catch (IOException e) {
+                cerrar();
+            }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            LOG.log(Level.FINE, "Cliente de eventos desconectado", t);
+            cerrar();
+        }
+
+        synchronized void cerrar() {
+            if (cerrado) {
+                return;
+            }
+            cerrado = true;
+            pendientes.clear();
+            quitar(this);
+            try {
+                async.complete();
+            } catch (IllegalStateException e) {
+                // Ya completado por el contenedor (error o corte del cliente)
+            }
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            quitar(this);
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            cerrar();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            cerrar();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+}
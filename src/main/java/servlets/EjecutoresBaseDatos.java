@@ -0,0 +1,251 @@
+package servlets;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.json.Json;
+import javax.json.JsonObjectBuilder;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Hilos propios para el trabajo contra la base de los servlets: la petición
+ * pasa a modo asíncrono (AsyncContext), el hilo de Tomcat se libera enseguida
+ * y el manejador corre en el ejecutor de lecturas o en el de escrituras.
+ *
+ * Los dos ejecutores están acotados (hilos y cola) y separados, así una ráfaga
+ * de lecturas lentas no deja sin hilos al alta de turnos o pacientes, y
+ * viceversa. Con la cola llena, o si la petición esperó en cola más de lo que
+ * admite su endpoint, se responde 503 sin tocar la base.
+ *
+ * Los servlets no despachan directo: pasan por su AdmisionEndpoint, que aplica
+ * el límite de concurrencia del endpoint antes de encolar.
+ *
+ * Lo crea el ContenedorAplicacion con los context-param de web.xml.
+ */
+public class EjecutoresBaseDatos {
+
+    /**
+     * Cuerpo de un doGet/doPost que corre en un hilo del ejecutor.
+     */
+    @FunctionalInterface
+    public interface Manejador {
+
+        void manejar(HttpServletRequest request, HttpServletResponse response)
+                throws ServletException, IOException;
+    }
+
+    /**
+     * Aviso al terminar una petición despachada: cuánto tardó desde que se
+     * encoló y si llegó a atenderse (false si venció en cola o fue rechazada).
+     */
+    @FunctionalInterface
+    interface Terminacion {
+
+        void terminada(long nanos, boolean atendida);
+    }
+
+    private static final Logger LOG = Logger.getLogger(EjecutoresBaseDatos.class.getName());
+
+    private static final int EN_COLA = 0;
+    private static final int ATENDIENDO = 1;
+    private static final int TERMINADA = 2;
+
+    private final Ejecutor lecturas;
+    private final Ejecutor escrituras;
+    private final Map<String, AdmisionEndpoint> admisiones = new ConcurrentHashMap<>();
+
+    public EjecutoresBaseDatos(int hilosLectura, int hilosEscritura, int cola) {
+        this.lecturas = new Ejecutor("bd-lectura", hilosLectura, cola);
+        this.escrituras = new Ejecutor("bd-escritura", hilosEscritura, cola);
+    }
+
+    // Una por servlet, con sus init-param; la llama cada servlet en init()
+    public AdmisionEndpoint admision(ServletConfig config) {
+        return admisiones.computeIfAbsent(config.getServletName(), n -> new AdmisionEndpoint(config, this));
+    }
+
+    public void cerrar() {
+        lecturas.pool.shutdownNow();
+        escrituras.pool.shutdownNow();
+    }
+
+    public JsonObjectBuilder metricas() {
+        JsonObjectBuilder endpoints = Json.createObjectBuilder();
+        for (AdmisionEndpoint admision : admisiones.values()) {
+            endpoints.add(admision.getNombre(), admision.metricas());
+        }
+        return Json.createObjectBuilder()
+                .add("lecturas", lecturas.metricas())
+                .add("escrituras", escrituras.metricas())
+                .add("endpoints", endpoints);
+    }
+
+    void despachar(boolean escritura, HttpServletRequest request, HttpServletResponse response,
+            long esperaMaximaMs, long retryAfterSegundos, Manejador manejador, Terminacion terminacion) {
+        Ejecutor ejecutor = escritura ? escrituras : lecturas;
+        AsyncContext async = request.startAsync(request, response);
+        // Quien saque la petición de EN_COLA es el único que escribe la respuesta y llama a
+        // complete(): el hilo del ejecutor o, si venció esperando, el timeout con un 503
+        AtomicInteger estado = new AtomicInteger(EN_COLA);
+        async.setTimeout(esperaMaximaMs);
+        async.addListener(new Vencimiento(ejecutor, estado, response, retryAfterSegundos));
+        long encolado = System.nanoTime();
+        try {
+            ejecutor.pool.execute(() -> {
+                if (!estado.compareAndSet(EN_COLA, ATENDIENDO)) {
+                    // Venció el AsyncContext mientras esperaba: ya se respondió 503
+                    terminacion.terminada(System.nanoTime() - encolado, false);
+                    return;
+                }
+                // Tomada: el timeout ya no aplica, la respuesta la termina este hilo
+                sinVencimiento(async);
+                boolean atendida = false;
+                try {
+                    if (TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - encolado) > esperaMaximaMs) {
+                        ejecutor.vencidas.incrementAndGet();
+                        rechazar(response, retryAfterSegundos);
+                        return;
+                    }
+                    atendida = true;
+                    manejador.manejar(request, response);
+                } catch (Exception e) {
+                    LOG.log(Level.SEVERE, "Error atendiendo " + request.getMethod() + " " + request.getRequestURI(), e);
+                    if (!response.isCommitted()) {
+                        response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                    }
+                } finally {
+                    terminacion.terminada(System.nanoTime() - encolado, atendida);
+                    if (estado.compareAndSet(ATENDIENDO, TERMINADA)) {
+                        completar(async, response);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            ejecutor.rechazadas.incrementAndGet();
+            terminacion.terminada(System.nanoTime() - encolado, false);
+            if (estado.compareAndSet(EN_COLA, TERMINADA)) {
+                rechazar(response, retryAfterSegundos);
+                completar(async, response);
+            }
+        }
+    }
+
+    // Si el contenedor no acepta cambiar el timeout, Vencimiento ignora las peticiones tomadas
+    private static void sinVencimiento(AsyncContext async) {
+        try {
+            async.setTimeout(0);
+        } catch (IllegalStateException e) {
+            LOG.log(Level.FINE, "No se pudo quitar el timeout de la petición", e);
+        }
+    }
+
+    // El filtro de compresión no ve el final de una respuesta asíncrona: se cierra acá
+    private static void completar(AsyncContext async, HttpServletResponse response) {
+        try {
+            FiltroCompresion.terminar(response);
+        } catch (IOException e) {
+            LOG.log(Level.FINE, "Cliente desconectado al cerrar la respuesta", e);
+        } finally {
+            async.complete();
+        }
+    }
+
+    // 503 con Retry-After: el cliente sabe cuándo reintentar sin martillar al servidor
+    static void rechazar(HttpServletResponse response, long retryAfterSegundos) {
+        try {
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            response.setHeader("Retry-After", String.valueOf(retryAfterSegundos));
+            response.setContentType("application/json");
+            response.setCharacterEncoding("UTF-8");
+            response.getWriter().print("{\"error\": \"Servidor ocupado, reintente en unos segundos\"}");
+        } catch (IOException | IllegalStateException e) {
+            LOG.log(Level.FINE, "No se pudo enviar el 503", e);
+        }
+    }
+
+    /**
+     * Timeout del AsyncContext: a una petición que sigue en cola le responde 503
+     * en lugar del error del contenedor. Una petición que ya tomó un hilo no se
+     * toca: la respuesta es de ese hilo hasta que llame a complete(), y
+     * escribirla o completarla desde acá la compartiría entre dos hilos.
+     */
+    private static class Vencimiento implements AsyncListener {
+
+        private final Ejecutor ejecutor;
+        private final AtomicInteger estado;
+        private final HttpServletResponse response;
+        private final long retryAfterSegundos;
+
+        Vencimiento(Ejecutor ejecutor, AtomicInteger estado, HttpServletResponse response, long retryAfterSegundos) {
+            this.ejecutor = ejecutor;
+            this.estado = estado;
+            this.response = response;
+            this.retryAfterSegundos = retryAfterSegundos;
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            if (!estado.compareAndSet(EN_COLA, TERMINADA)) {
+                return;
+            }
+            ejecutor.vencidas.incrementAndGet();
+            rechazar(response, retryAfterSegundos);
+            completar(event.getAsyncContext(), response);
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+
+    private static class Ejecutor {
+
+        private final ThreadPoolExecutor pool;
+        private final AtomicLong rechazadas = new AtomicLong();
+        private final AtomicLong vencidas = new AtomicLong();
+
+        Ejecutor(String nombre, int hilos, int cola) {
+            AtomicInteger numero = new AtomicInteger();
+            // AbortPolicy: con la cola llena execute() lanza RejectedExecutionException y se responde 503
+            this.pool = new ThreadPoolExecutor(hilos, hilos, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(cola),
+                    r -> {
+                        Thread t = new Thread(r, nombre + "-" + numero.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    });
+            this.pool.allowCoreThreadTimeOut(true);
+        }
+
+        JsonObjectBuilder metricas() {
+            return Json.createObjectBuilder()
+                    .add("hilos", pool.getMaximumPoolSize())
+                    .add("activos", pool.getActiveCount())
+                    .add("enCola", pool.getQueue().size())
+                    .add("completadas", pool.getCompletedTaskCount())
+                    .add("rechazadas", rechazadas.get())
+                    .add("vencidasEnCola", vencidas.get());
+        }
+    }
+}
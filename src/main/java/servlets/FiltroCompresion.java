@@ -0,0 +1,496 @@
+package servlets;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+import javax.json.Json;
+import javax.json.JsonObjectBuilder;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.ServletResponseWrapper;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * Compresión gzip de las respuestas (JSON de los servlets y estáticos de
+ * texto: HTML, CSS, JS, SVG) cuando el navegador la acepta.
+ *
+ * No arma la respuesta entera en memoria: junta solo los primeros bytes hasta
+ * el umbral del tipo; si la respuesta termina antes sale tal cual, y si lo
+ * supera se empieza a comprimir y lo demás pasa por el GZIPOutputStream a
+ * medida que se escribe.
+ *
+ * init-param (web.xml):
+ *   tipos  - content types a comprimir, con umbral propio opcional en bytes:
+ *            "application/json:512, text/css, ..." (sin umbral usa el general)
+ *   umbral - bytes mínimos para comprimir (por defecto 1024)
+ *   nivel  - nivel de Deflater, 1 (rápido) a 9 (más chico), 0 sin comprimir
+ *            o -1 el default de zlib; por defecto 6
+ *
+ * Con los servlets asíncronos la respuesta termina en el hilo del ejecutor:
+ * EjecutoresBaseDatos llama a terminar() antes de completar el AsyncContext.
+ *
+ * /SvMetricas muestra lo que cuesta y lo que ahorra: bytes antes y después y
+ * el tiempo pasado dentro del GZIPOutputStream (CPU del Deflater más la
+ * escritura al buffer del contenedor), total y por respuesta comprimida. Con
+ * eso se compara el costo contra los bytes que no viajan por la red.
+ */
+public class FiltroCompresion implements Filter {
+
+    private static final Logger LOG = Logger.getLogger(FiltroCompresion.class.getName());
+
+    private static final int UMBRAL_DEFAULT = 1024;
+    private static final int NIVEL_DEFAULT = 6;
+    private static final String RUTA_EVENTOS = "/SvEventos";
+    private static final String TIPOS_DEFAULT = "application/json, text/html, text/css, "
+            + "application/javascript, text/javascript, image/svg+xml";
+
+    // Totales desde el arranque, para /SvMetricas
+    private static final AtomicLong comprimidas = new AtomicLong();
+    private static final AtomicLong planas = new AtomicLong();
+    private static final AtomicLong bytesOriginales = new AtomicLong();
+    private static final AtomicLong bytesEnviados = new AtomicLong();
+    private static final AtomicLong nanosComprimiendo = new AtomicLong();
+
+    private final Map<String, Integer> umbralPorTipo = new LinkedHashMap<>();
+    private int nivel = Deflater.DEFAULT_COMPRESSION;
+
+    @Override
+    public void init(FilterConfig config) throws ServletException {
+        int umbral = leerEntero(config, "umbral", UMBRAL_DEFAULT);
+        nivel = leerEntero(config, "nivel", NIVEL_DEFAULT);
+        // Deflater.setLevel rechaza el resto recién al comprimir la primera respuesta
+        if (nivel < Deflater.DEFAULT_COMPRESSION || nivel > Deflater.BEST_COMPRESSION) {
+            LOG.log(Level.WARNING, "nivel fuera de rango (-1..9): {0}, se usa {1}",
+                    new Object[] { nivel, NIVEL_DEFAULT });
+            nivel = NIVEL_DEFAULT;
+        }
+        String tipos = config.getInitParameter("tipos");
+        for (String entrada : (tipos != null ? tipos : TIPOS_DEFAULT).split(",")) {
+            String[] partes = entrada.trim().split(":");
+            if (partes[0].isEmpty()) {
+                continue;
+            }
+            int umbralTipo = umbral;
+            if (partes.length > 1) {
+                try {
+                    umbralTipo = Integer.parseInt(partes[1].trim());
+                } catch (NumberFormatException e) {
+                    LOG.log(Level.WARNING, "Umbral inválido para {0}", partes[0]);
+                }
+            }
+            umbralPorTipo.put(partes[0].toLowerCase(Locale.ROOT), umbralTipo);
+        }
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        HttpServletRequest req = (HttpServletRequest) request;
+        // SvEventos escribe en modo no bloqueante y cada evento tiene que salir en el momento.
+        // Se excluye por ruta: un EventSource sin Accept igual tiene que pasar derecho
+        if (!aceptaGzip(req) || "HEAD".equals(req.getMethod()) || RUTA_EVENTOS.equals(req.getServletPath())) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        RespuestaComprimida envoltura = new RespuestaComprimida((HttpServletResponse) response);
+        try {
+            chain.doFilter(request, envoltura);
+        } finally {
+            // Asíncronas: la respuesta sigue escribiéndose en otro hilo, la cierra el ejecutor
+            if (!request.isAsyncStarted()) {
+                envoltura.terminar();
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    // Cierra la compresión de una respuesta envuelta por este filtro (si lo está)
+    static void terminar(ServletResponse response) throws IOException {
+        ServletResponse r = response;
+        while (r instanceof ServletResponseWrapper) {
+            if (r instanceof RespuestaComprimida) {
+                ((RespuestaComprimida) r).terminar();
+                return;
+            }
+            r = ((ServletResponseWrapper) r).getResponse();
+        }
+    }
+
+    static JsonObjectBuilder metricas() {
+        long originales = bytesOriginales.get();
+        long enviados = bytesEnviados.get();
+        long cantidad = comprimidas.get();
+        long nanos = nanosComprimiendo.get();
+        return Json.createObjectBuilder()
+                .add("comprimidas", cantidad)
+                .add("sinComprimir", planas.get())
+                .add("bytesOriginales", originales)
+                .add("bytesEnviados", enviados)
+                .add("ahorroPorcentaje", originales > 0 ? Math.round(100.0 * (originales - enviados) / originales) : 0)
+                .add("msComprimiendo", TimeUnit.NANOSECONDS.toMillis(nanos))
+                .add("usPorRespuesta", cantidad > 0 ? TimeUnit.NANOSECONDS.toMicros(nanos / cantidad) : 0);
+    }
+
+    private static boolean aceptaGzip(HttpServletRequest request) {
+        String aceptadas = request.getHeader("Accept-Encoding");
+        if (aceptadas == null) {
+            return false;
+        }
+        for (String codificacion : aceptadas.split(",")) {
+            String[] partes = codificacion.trim().split(";");
+            if (partes[0].trim().equalsIgnoreCase("gzip")) {
+                // gzip;q=0 significa "no"
+                return partes.length < 2 || !partes[1].trim().matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+
+    private static int leerEntero(FilterConfig config, String nombre, int porDefecto) {
+        String valor = config.getInitParameter(nombre);
+        if (valor != null) {
+            try {
+                return Integer.parseInt(valor.trim());
+            } catch (NumberFormatException e) {
+                LOG.log(Level.WARNING, "{0} inválido: {1}", new Object[] { nombre, valor });
+            }
+        }
+        return porDefecto;
+    }
+
+    // null si el tipo no se comprime
+    private Integer umbralPara(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        int fin = contentType.indexOf(';');
+        String tipo = (fin >= 0 ? contentType.substring(0, fin) : contentType).trim().toLowerCase(Locale.ROOT);
+        return umbralPorTipo.get(tipo);
+    }
+
+    /**
+     * Respuesta que decide al escribir si comprime. Mientras no decide retiene
+     * Content-Length, para no mandar el largo sin comprimir junto al gzip.
+     */
+    private class RespuestaComprimida extends HttpServletResponseWrapper {
+
+        private SalidaComprimible salida;
+        private PrintWriter writer;
+        private long contentLength = -1;
+
+        RespuestaComprimida(HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (writer != null) {
+                throw new IllegalStateException("getWriter() ya fue llamado");
+            }
+            return salida();
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                if (salida != null) {
+                    throw new IllegalStateException("getOutputStream() ya fue llamado");
+                }
+                writer = new PrintWriter(new OutputStreamWriter(salida(), getCharacterEncoding()));
+            }
+            return writer;
+        }
+
+        private SalidaComprimible salida() throws IOException {
+            if (salida == null) {
+                salida = new SalidaComprimible(this);
+            }
+            return salida;
+        }
+
+        @Override
+        public void setContentLength(int len) {
+            setContentLengthLong(len);
+        }
+
+        @Override
+        public void setContentLengthLong(long len) {
+            if (salida != null && salida.decidido) {
+                if (!salida.comprimiendo) {
+                    super.setContentLengthLong(len);
+                }
+            } else {
+                contentLength = len;
+            }
+        }
+
+        @Override
+        public void setHeader(String name, String value) {
+            if ("Content-Length".equalsIgnoreCase(name)) {
+                setContentLengthLong(Long.parseLong(value));
+            } else {
+                super.setHeader(name, value);
+            }
+        }
+
+        @Override
+        public void addHeader(String name, String value) {
+            if ("Content-Length".equalsIgnoreCase(name)) {
+                setContentLengthLong(Long.parseLong(value));
+            } else {
+                super.addHeader(name, value);
+            }
+        }
+
+        // Una vez que empezó el gzip no hay vuelta atrás, aunque el contenedor todavía no haya enviado nada
+        @Override
+        public boolean isCommitted() {
+            return (salida != null && salida.comprimiendo) || super.isCommitted();
+        }
+
+        @Override
+        public void resetBuffer() {
+            if (salida != null && !salida.decidido) {
+                salida.pendiente.reset();
+            }
+            super.resetBuffer();
+        }
+
+        @Override
+        public void reset() {
+            resetBuffer();
+            contentLength = -1;
+            super.reset();
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            } else if (salida != null) {
+                salida.flush();
+            }
+            if (salida == null || salida.decidido) {
+                super.flushBuffer();
+            }
+        }
+
+        synchronized void terminar() throws IOException {
+            if (writer != null) {
+                writer.close();
+            } else if (salida != null) {
+                salida.close();
+            } else if (contentLength >= 0) {
+                super.setContentLengthLong(contentLength);
+            }
+        }
+
+        // La respuesta es chica o no comprimible: sale igual que sin el filtro
+        void enviarPlana() {
+            if (contentLength >= 0) {
+                super.setContentLengthLong(contentLength);
+            }
+        }
+
+        // Un ETag fuerte identifica los bytes exactos: el de la versión gzip tiene que ser otro
+        void comprimida() {
+            super.setHeader("Content-Encoding", "gzip");
+            String etag = original().getHeader("ETag");
+            if (etag != null && etag.startsWith("\"")) {
+                super.setHeader("ETag", "W/" + etag);
+            }
+        }
+
+        HttpServletResponse original() {
+            return (HttpServletResponse) getResponse();
+        }
+    }
+
+    /**
+     * Junta hasta el umbral y después escribe directo (comprimido o no) en la
+     * salida real.
+     */
+    private class SalidaComprimible extends ServletOutputStream {
+
+        private final RespuestaComprimida respuesta;
+        private final ByteArrayOutputStream pendiente = new ByteArrayOutputStream();
+        private OutputStream destino;
+        private ServletOutputStream real;
+        private boolean decidido;
+        private boolean comprimiendo;
+        private boolean cerrado;
+        private long escritos;
+        private Integer umbral;
+
+        SalidaComprimible(RespuestaComprimida respuesta) {
+            this.respuesta = respuesta;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (cerrado) {
+                throw new IOException("La respuesta ya fue cerrada");
+            }
+            escritos += len;
+            if (decidido) {
+                escribir(b, off, len);
+                return;
+            }
+            if (pendiente.size() == 0) {
+                umbral = umbralSegunRespuesta();
+                if (umbral == null) {
+                    decidir(false);
+                    destino.write(b, off, len);
+                    return;
+                }
+            }
+            pendiente.write(b, off, len);
+            if (pendiente.size() >= umbral) {
+                decidir(true);
+            }
+        }
+
+        private Integer umbralSegunRespuesta() {
+            HttpServletResponse r = respuesta.original();
+            int status = r.getStatus();
+            if (status == HttpServletResponse.SC_NO_CONTENT || status == HttpServletResponse.SC_NOT_MODIFIED
+                    || r.containsHeader("Content-Encoding")) {
+                return null;
+            }
+            Integer u = umbralPara(r.getContentType());
+            if (u == null) {
+                return null;
+            }
+            // La caché debe distinguir la versión gzip de la plana
+            r.addHeader("Vary", "Accept-Encoding");
+            if (respuesta.contentLength >= 0 && respuesta.contentLength < u) {
+                return null;
+            }
+            return u;
+        }
+
+        private void decidir(boolean comprimir) throws IOException {
+            decidido = true;
+            comprimiendo = comprimir;
+            real = respuesta.original().getOutputStream();
+            if (comprimir) {
+                respuesta.comprimida();
+                destino = new GZIPOutputStream(new ContadorSalida(real), 8192, true) {
+                    {
+                        def.setLevel(nivel);
+                    }
+                };
+                comprimidas.incrementAndGet();
+            } else {
+                respuesta.enviarPlana();
+                destino = real;
+                planas.incrementAndGet();
+            }
+            if (pendiente.size() > 0) {
+                escribir(pendiente.toByteArray(), 0, pendiente.size());
+                pendiente.reset();
+            }
+        }
+
+        private void escribir(byte[] b, int off, int len) throws IOException {
+            if (!comprimiendo) {
+                destino.write(b, off, len);
+                return;
+            }
+            long inicio = System.nanoTime();
+            destino.write(b, off, len);
+            nanosComprimiendo.addAndGet(System.nanoTime() - inicio);
+        }
+
+        // Antes del umbral no se vacía nada: todavía no se sabe si se va a comprimir
+        @Override
+        public void flush() throws IOException {
+            if (decidido) {
+                destino.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (cerrado) {
+                return;
+            }
+            if (!decidido) {
+                decidir(false);
+            }
+            cerrado = true;
+            if (comprimiendo) {
+                bytesOriginales.addAndGet(escritos);
+                long inicio = System.nanoTime();
+                ((GZIPOutputStream) destino).finish();
+                nanosComprimiendo.addAndGet(System.nanoTime() - inicio);
+            }
+            destino.flush();
+        }
+
+        @Override
+        public boolean isReady() {
+            return real == null || real.isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener listener) {
+            throw new IllegalStateException("E/S no bloqueante no soportada con compresión");
+        }
+    }
+
+    // Cuenta los bytes comprimidos que salen hacia el contenedor
+    private static class ContadorSalida extends OutputStream {
+
+        private final OutputStream destino;
+
+        ContadorSalida(OutputStream destino) {
+            this.destino = destino;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            destino.write(b);
+            bytesEnviados.incrementAndGet();
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            destino.write(b, off, len);
+            bytesEnviados.addAndGet(len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            destino.flush();
+        }
+    }
+}
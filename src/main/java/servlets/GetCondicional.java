@@ -0,0 +1,67 @@
+package servlets;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * GET condicional con los sellos de VersionesDatos: ETag (débil, así sigue
+ * valiendo si la respuesta sale comprimida) y Last-Modified. Si el navegador
+ * ya tiene esa versión se responde 304 sin encolar la petición ni ir a la base.
+ *
+ * Cache-Control: no-cache obliga a revalidar cada vez; sin él el navegador
+ * podría reusar la copia por heurística sin preguntar.
+ */
+final class GetCondicional {
+
+    private GetCondicional() {
+    }
+
+    // true si ya respondió 304; si no, deja ETag y Last-Modified puestos para la respuesta
+    static boolean noModificado(HttpServletRequest request, HttpServletResponse response,
+            String etiqueta, long ultimaModificacion) {
+        String etag = "W/\"" + etiqueta + "\"";
+        response.setHeader("ETag", etag);
+        response.setDateHeader("Last-Modified", ultimaModificacion);
+        response.setHeader("Cache-Control", "no-cache");
+
+        // If-None-Match manda sobre If-Modified-Since (RFC 7232 §6)
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        boolean vigente;
+        if (ifNoneMatch != null) {
+            vigente = coincide(ifNoneMatch, etag);
+        } else {
+            vigente = noModificadoDesde(request, ultimaModificacion);
+        }
+        if (vigente) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        }
+        return vigente;
+    }
+
+    // Comparación débil: W/"x" y "x" son la misma versión
+    private static boolean coincide(String ifNoneMatch, String etag) {
+        String buscada = sinPrefijoDebil(etag);
+        for (String candidata : ifNoneMatch.split(",")) {
+            String c = candidata.trim();
+            if (c.equals("*") || sinPrefijoDebil(c).equals(buscada)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String sinPrefijoDebil(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+
+    // Last-Modified viaja con resolución de segundos; los sellos son segundos enteros
+    // distintos para cada versión, así que comparar segundos no confunde dos versiones
+    private static boolean noModificadoDesde(HttpServletRequest request, long ultimaModificacion) {
+        try {
+            long desde = request.getDateHeader("If-Modified-Since");
+            return desde >= 0 && ultimaModificacion / 1000 <= desde / 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+}
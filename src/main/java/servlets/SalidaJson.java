@@ -0,0 +1,49 @@
+package servlets;
+
+import java.io.IOException;
+import java.util.Collections;
+import javax.json.Json;
+import javax.json.stream.JsonGenerator;
+import javax.json.stream.JsonGeneratorFactory;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Escritura de listados directo a la respuesta con JsonGenerator: cada fila
+ * se serializa y sale al buffer del contenedor apenas se lee, sin armar el
+ * árbol JsonArray completo ni el String del documento.
+ *
+ * La fábrica es una sola para toda la aplicación (crearla por respuesta
+ * repite la búsqueda del proveedor JSON-P).
+ */
+final class SalidaJson {
+
+    private static final JsonGeneratorFactory FABRICA = Json.createGeneratorFactory(Collections.emptyMap());
+
+    private SalidaJson() {
+    }
+
+    static JsonGenerator abrir(HttpServletResponse response) throws IOException {
+        return FABRICA.createGenerator(response.getWriter());
+    }
+
+    // Error de un listado: si todavía no salió nada se responde 500 con el mensaje. Por eso
+    // los servlets validan los parámetros y leen de la base antes de abrir(); solo los
+    // listados completos por lotes leen mientras escriben, y ahí un error a mitad de
+    // camino solo puede cortar la respuesta (el cliente recibe un JSON incompleto)
+    static void error(HttpServletResponse response, String mensaje) throws IOException {
+        if (response.isCommitted()) {
+            return;
+        }
+        response.resetBuffer();
+        response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        response.getWriter().write(Json.createObjectBuilder()
+                .add("error", mensaje != null ? mensaje : "Error interno")
+                .build().toString());
+    }
+
+    static void agregar(JsonGenerator g, String nombre, String valor) {
+        if (valor != null) {
+            g.write(nombre, valor);
+        }
+    }
+}
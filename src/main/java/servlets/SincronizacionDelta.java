@@ -0,0 +1,92 @@
+package servlets;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Date;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import javax.json.Json;
+import javax.json.stream.JsonGenerator;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import logica.Controladora;
+import logica.VersionesDatos;
+
+/**
+ * Respuesta de ?since= (cambios desde un instante) para SvPaciente, SvTurno
+ * y SvHistorialMedico:
+ *
+ *   {"hasta": 1712345678901, "modificados": [...], "eliminados": ["..."]}
+ *
+ * Las filas modificadas tienen el mismo formato que el listado completo y
+ * eliminados trae las claves de las bajas. El cliente aplica primero las
+ * modificadas y después las bajas, y en el próximo pedido manda ?since=hasta.
+ * Una clave que se volvió a crear (un DNI dado de baja y cargado otra vez) no
+ * sale en eliminados: solo en modificados, con la fila nueva.
+ *
+ * hasta queda MARGEN_MS antes del inicio de la consulta: una escritura toma
+ * su updated_at antes del commit, así que lo recién escrito puede no verse
+ * todavía. Esas filas vuelven a llegar en el pedido siguiente; aplicar la
+ * misma fila dos veces no cambia nada.
+ *
+ * Si las bajas del período ya se purgaron se responde 410 y el cliente tiene
+ * que bajar el listado completo.
+ */
+final class SincronizacionDelta {
+
+    private static final long MARGEN_MS = 5000;
+
+    private SincronizacionDelta() {
+    }
+
+    // modificados lee las filas cambiadas desde la fecha recibida; escribir las saca en el formato del listado
+    static <T> void responder(HttpServletRequest request, HttpServletResponse response, Controladora control,
+            VersionesDatos.Coleccion coleccion, Function<Date, List<T>> modificados,
+            BiConsumer<JsonGenerator, T> escribir) throws IOException {
+        Date desde = leerSince(request.getParameter("since"));
+        if (desde == null) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            response.getWriter().write("{\"error\": \"since inválido (milisegundos o fecha ISO-8601)\"}");
+            return;
+        }
+        if (!control.sincronizableDesde(desde)) {
+            response.setStatus(HttpServletResponse.SC_GONE);
+            response.getWriter().write(Json.createObjectBuilder()
+                    .add("error", "Cambios no disponibles desde esa fecha: pedir el listado completo")
+                    .build().toString());
+            return;
+        }
+        // Antes de leer: lo que se escriba durante la consulta entra en el próximo pedido
+        long hasta = System.currentTimeMillis() - MARGEN_MS;
+
+        // Las dos lecturas antes de empezar a escribir: si falla la base todavía se puede responder 500
+        List<T> filas = modificados.apply(desde);
+        List<String> bajas = control.traerBajasDesde(coleccion, desde);
+
+        JsonGenerator g = SalidaJson.abrir(response);
+        g.writeStartObject().write("hasta", hasta).writeStartArray("modificados");
+        for (T fila : filas) {
+            escribir.accept(g, fila);
+        }
+        g.writeEnd().writeStartArray("eliminados");
+        for (String clave : bajas) {
+            g.write(clave);
+        }
+        g.writeEnd().writeEnd().close();
+    }
+
+    // Milisegundos (el hasta de la respuesta anterior) o un instante ISO-8601; null si no es ninguno
+    private static Date leerSince(String since) {
+        try {
+            return new Date(Long.parseLong(since.trim()));
+        } catch (NumberFormatException e) {
+            try {
+                return Date.from(Instant.parse(since.trim()));
+            } catch (DateTimeParseException ex) {
+                return null;
+            }
+        }
+    }
+}
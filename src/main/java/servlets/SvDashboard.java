@@ -2,11 +2,6 @@ package servlets;
 
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
-import java.util.Date;
-import java.util.List;
-import java.util.stream.Collectors;
 import javax.json.Json;
 import javax.json.JsonArrayBuilder;
 import javax.json.JsonObject;
@@ -17,83 +12,68 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import logica.Controladora;
-import logica.Paciente;
-import logica.Turno;
-import logica.HistorialMedico;
+import logica.EstadisticasDashboard;
 
-@WebServlet(name = "SvDashboard", urlPatterns = { "/SvDashboard" })
+@WebServlet(name = "SvDashboard", urlPatterns = { "/SvDashboard" }, asyncSupported = true)
 public class SvDashboard extends HttpServlet {
-    Controladora control = new Controladora();
-    private final SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm");
-    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+    private Controladora control;
+    private AdmisionEndpoint admision;
 
+    @Override
+    public void init() throws ServletException {
+        control = ContenedorAplicacion.get(getServletContext()).getControladora();
+        admision = ContenedorAplicacion.get(getServletContext()).getEjecutores().admision(getServletConfig());
+    }
+
+    // doGet pasa por el control de admisión del endpoint antes de ir al ejecutor
     @Override
     protected void doGet(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
+        admision.lectura(request, response, this::procesarGet);
+    }
+
+    private void procesarGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
 
         response.setContentType("application/json");
         response.setCharacterEncoding("UTF-8");
 
         try {
-            Date hoy = new Date();
-
-            // 1. Estadísticas Básicas
-            List<Paciente> todosPacientes = control.traerPacientes();
-            List<Turno> todosTurnos = control.traerTurnos();
-            List<Turno> turnosHoy = control.traerTurnosPorFecha(hoy);
-            List<HistorialMedico> todosHistoriales = control.traerHistorialesMedicos();
-
-            // Consultas del mes actual
-            Calendar cal = Calendar.getInstance();
-            int mesActual = cal.get(Calendar.MONTH);
-            int anioActual = cal.get(Calendar.YEAR);
-
-            long consultasMes = todosHistoriales.stream()
-                    .filter(h -> {
-                        Calendar c = Calendar.getInstance();
-                        c.setTime(h.getFecha_registro());
-                        return c.get(Calendar.MONTH) == mesActual && c.get(Calendar.YEAR) == anioActual;
-                    }).count();
-
-            long pendientes = todosTurnos.stream()
-                    .filter(t -> t.getEstado() == Turno.EstadoTurno.PENDIENTE)
-                    .count();
+            // Contadores en memoria mantenidos por la Controladora: no consulta la base
+            EstadisticasDashboard.Resumen resumen = control.traerResumenDashboard();
 
-            // 2. Próximos Turnos (Hoy)
+            // 1. Próximos Turnos (Hoy)
             JsonArrayBuilder jsonTurnos = Json.createArrayBuilder();
-            for (Turno t : turnosHoy) {
+            for (Object[] t : resumen.getTurnosHoy()) {
+                String nombre = (String) t[2];
+                String apellido = (String) t[3];
                 JsonObjectBuilder tJson = Json.createObjectBuilder()
-                        .add("hora", t.getHora_Turno())
-                        .add("paciente",
-                                t.getPacien() != null ? (t.getPacien().getNombre() + " " + t.getPacien().getApellido())
-                                        : "Sin Paciente")
-                        .add("motivo", t.getAfeccion() != null ? t.getAfeccion() : "")
-                        .add("estado", t.getEstado() != null ? t.getEstado().toString() : "PENDIENTE");
+                        .add("hora", t[1] != null ? (String) t[1] : "")
+                        .add("paciente", nombre != null ? (nombre + " " + apellido) : "Sin Paciente")
+                        .add("motivo", t[4] != null ? (String) t[4] : "")
+                        .add("estado", t[5] != null ? t[5].toString() : "PENDIENTE");
                 jsonTurnos.add(tJson);
             }
 
-            // 3. Pacientes Recientes (últimos 5)
+            // 2. Pacientes Recientes (últimos 5 por fecha de alta)
             JsonArrayBuilder jsonPacientes = Json.createArrayBuilder();
-            int limit = Math.min(todosPacientes.size(), 5);
-            // JPA suele traer en orden de ID, invertimos para "recientes"
-            for (int i = todosPacientes.size() - 1; i >= todosPacientes.size() - limit; i--) {
-                Paciente p = todosPacientes.get(i);
+            for (Object[] p : resumen.getPacientesRecientes()) {
                 JsonObjectBuilder pJson = Json.createObjectBuilder()
-                        .add("dni", p.getDniPaciente())
-                        .add("nombre", p.getNombre())
-                        .add("apellido", p.getApellido())
-                        .add("telefono", p.getTelefono() != null ? p.getTelefono() : "-")
-                        .add("email", p.getEmail() != null ? p.getEmail() : "-");
+                        .add("dni", (String) p[0])
+                        .add("nombre", p[1] != null ? (String) p[1] : "")
+                        .add("apellido", p[2] != null ? (String) p[2] : "")
+                        .add("telefono", p[3] != null ? (String) p[3] : "-")
+                        .add("email", p[4] != null ? (String) p[4] : "-");
                 jsonPacientes.add(pJson);
             }
 
             // Construir respuesta final
             JsonObject dashboardData = Json.createObjectBuilder()
                     .add("stats", Json.createObjectBuilder()
-                            .add("totalPacientes", todosPacientes.size())
-                            .add("turnosHoy", turnosHoy.size())
-                            .add("consultasMes", consultasMes)
-                            .add("pendientes", pendientes))
+                            .add("totalPacientes", resumen.getTotalPacientes())
+                            .add("turnosHoy", resumen.getTurnosHoy().size())
+                            .add("consultasMes", resumen.getConsultasMes())
+                            .add("pendientes", resumen.getPendientes()))
                     .add("proximosTurnos", jsonTurnos)
                     .add("pacientesRecientes", jsonPacientes)
                     .build();
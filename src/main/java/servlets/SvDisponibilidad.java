@@ -0,0 +1,105 @@
+package servlets;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObjectBuilder;
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import logica.AgendaDisponibilidad;
+import logica.Controladora;
+import logica.Turno;
+
+// Horarios libres para turnos:
+//   ?desde=yyyy-MM-dd&hasta=yyyy-MM-dd&duracion=30 -> [{fecha, inicio, fin}, ...]
+//   ?proximo=1&desde=yyyy-MM-dd&duracion=30        -> {fecha, inicio, fin} o null
+@WebServlet(name = "SvDisponibilidad", urlPatterns = { "/SvDisponibilidad" }, asyncSupported = true)
+public class SvDisponibilidad extends HttpServlet {
+
+    private static final int MAX_DIAS_RANGO = 92;
+    private static final DateTimeFormatter HORA = DateTimeFormatter.ofPattern("HH:mm");
+
+    private Controladora control;
+    private AdmisionEndpoint admision;
+
+    @Override
+    public void init() throws ServletException {
+        control = ContenedorAplicacion.get(getServletContext()).getControladora();
+        admision = ContenedorAplicacion.get(getServletContext()).getEjecutores().admision(getServletConfig());
+    }
+
+    // Los días que no están en memoria se leen de la base: va por el ejecutor de lecturas
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        admision.lectura(request, response, this::procesarGet);
+    }
+
+    private void procesarGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+
+        LocalDate desde;
+        LocalDate hasta;
+        int duracion;
+        try {
+            String desdeStr = request.getParameter("desde");
+            String hastaStr = request.getParameter("hasta");
+            String duracionStr = request.getParameter("duracion");
+            desde = desdeStr != null && !desdeStr.isEmpty() ? LocalDate.parse(desdeStr) : LocalDate.now();
+            hasta = hastaStr != null && !hastaStr.isEmpty() ? LocalDate.parse(hastaStr) : desde;
+            duracion = duracionStr != null && !duracionStr.isEmpty()
+                    ? Integer.parseInt(duracionStr) : AgendaDisponibilidad.DURACION_TURNO_MINUTOS;
+        } catch (DateTimeParseException | NumberFormatException e) {
+            responderError(response, "Parámetros inválidos: " + e.getMessage());
+            return;
+        }
+        if (duracion <= 0 || duracion > Turno.DURACION_MAXIMA_MINUTOS) {
+            responderError(response, "La duración debe estar entre 1 y " + Turno.DURACION_MAXIMA_MINUTOS + " minutos");
+            return;
+        }
+        boolean proximo = request.getParameter("proximo") != null;
+        if (!proximo && (hasta.isBefore(desde) || ChronoUnit.DAYS.between(desde, hasta) >= MAX_DIAS_RANGO)) {
+            responderError(response, "El rango debe tener entre 1 y " + MAX_DIAS_RANGO + " días");
+            return;
+        }
+
+        try (PrintWriter out = response.getWriter()) {
+            if (proximo) {
+                AgendaDisponibilidad.HuecoLibre hueco = control.traerProximoHuecoLibre(desde, duracion);
+                out.print(hueco != null ? toJson(hueco).build().toString() : "null");
+                return;
+            }
+
+            List<AgendaDisponibilidad.HuecoLibre> huecos = control.traerHuecosLibres(desde, hasta, duracion);
+            JsonArrayBuilder jsonArray = Json.createArrayBuilder();
+            for (AgendaDisponibilidad.HuecoLibre h : huecos) {
+                jsonArray.add(toJson(h));
+            }
+            out.print(jsonArray.build().toString());
+        }
+    }
+
+    private JsonObjectBuilder toJson(AgendaDisponibilidad.HuecoLibre h) {
+        return Json.createObjectBuilder()
+                .add("fecha", h.getFecha().toString())
+                .add("inicio", h.getInicio().format(HORA))
+                .add("fin", h.getFin().format(HORA));
+    }
+
+    private void responderError(HttpServletResponse response, String mensaje) throws IOException {
+        response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+        response.getWriter().print(Json.createObjectBuilder().add("error", mensaje).build().toString());
+    }
+}
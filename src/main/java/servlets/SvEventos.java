@@ -0,0 +1,47 @@
+package servlets;
+
+import java.io.IOException;
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Flujo text/event-stream con los cambios de turnos y pacientes (ver
+ * DifusorEventos). El calendario y el dashboard lo abren con EventSource y
+ * actualizan su vista sin volver a pedir los listados.
+ *
+ * No pasa por los EjecutoresBaseDatos: la conexión queda abierta sin ocupar
+ * ningún hilo y no toca la base.
+ */
+@WebServlet(name = "SvEventos", urlPatterns = { "/SvEventos" }, asyncSupported = true)
+public class SvEventos extends HttpServlet {
+
+    private DifusorEventos difusor;
+
+    @Override
+    public void init() throws ServletException {
+        difusor = ContenedorAplicacion.get(getServletContext()).getDifusor();
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+
+        response.setContentType("text/event-stream");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Cache-Control", "no-cache");
+        // Sin esto nginx junta los eventos en su buffer
+        response.setHeader("X-Accel-Buffering", "no");
+
+        AsyncContext async = request.startAsync();
+        async.setTimeout(0);
+        if (!difusor.conectar(async)) {
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            response.setHeader("Retry-After", "30");
+            async.complete();
+        }
+    }
+}
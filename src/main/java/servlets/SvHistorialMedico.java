@@ -1,37 +1,72 @@
 package servlets;
 
+import logica.VersionesDatos;
 import logica.Controladora;
+import logica.HistorialListado;
 import logica.HistorialMedico;
 import logica.Paciente;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.StringReader;
-import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.Date;
 import java.util.List;
 import javax.json.Json;
-import javax.json.JsonArrayBuilder;
 import javax.json.JsonObject;
 import javax.json.JsonObjectBuilder;
 import javax.json.JsonReader;
+import javax.json.stream.JsonGenerator;
 import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-@WebServlet(name = "SvHistorialMedico", urlPatterns = { "/SvHistorialMedico" })
+@WebServlet(name = "SvHistorialMedico", urlPatterns = { "/SvHistorialMedico" }, asyncSupported = true)
 public class SvHistorialMedico extends HttpServlet {
 
-    Controladora control = new Controladora();
+    // DateTimeFormatter es inmutable: uno solo para todas las filas y todos los hilos
+    private static final DateTimeFormatter FECHA_HORA = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
+
+    private Controladora control;
+    private AdmisionEndpoint admision;
+
+    @Override
+    public void init() throws ServletException {
+        control = ContenedorAplicacion.get(getServletContext()).getControladora();
+        admision = ContenedorAplicacion.get(getServletContext()).getEjecutores().admision(getServletConfig());
+    }
 
     protected void processRequest(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
     }
 
+    // Los do* pasan por el control de admisión del endpoint antes de ir al ejecutor
     @Override
     protected void doGet(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
+        // ?dni= con el sello del paciente; ?id= con el de toda la colección
+        String dni = request.getParameter("dni");
+        long version = dni != null ? control.versionPaciente(dni)
+                : control.versionColeccion(VersionesDatos.Coleccion.HISTORIALES);
+        if (GetCondicional.noModificado(request, response, (dni != null ? "historial-" : "historiales-") + version,
+                version)) {
+            return;
+        }
+        admision.lectura(request, response, this::procesarGet);
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        admision.escritura(request, response, this::procesarPost);
+    }
+
+    private void procesarGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
         response.setContentType("application/json");
         response.setCharacterEncoding("UTF-8");
 
@@ -39,8 +74,19 @@ public class SvHistorialMedico extends HttpServlet {
             String idInfo = request.getParameter("id");
             String dni = request.getParameter("dni");
 
-            if (idInfo != null) {
-                long id = Long.parseLong(idInfo);
+            if (request.getParameter("since") != null) {
+                // Consultas de todos los pacientes cambiadas desde ?since= (ver SincronizacionDelta)
+                SincronizacionDelta.responder(request, response, control, VersionesDatos.Coleccion.HISTORIALES,
+                        control::traerHistorialesModificadosDesde, SvHistorialMedico::escribir);
+            } else if (idInfo != null) {
+                long id;
+                try {
+                    id = Long.parseLong(idInfo.trim());
+                } catch (NumberFormatException e) {
+                    response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+                    response.getWriter().write("{\"error\": \"id inválido\"}");
+                    return;
+                }
                 HistorialMedico h = control.traerHistorialMedico(id);
                 if (h != null) {
                     response.getWriter().write(toJson(h).toString());
@@ -49,21 +95,22 @@ public class SvHistorialMedico extends HttpServlet {
                     response.getWriter().write("{\"error\": \"Historial no encontrado\"}");
                 }
             } else if (dni != null) {
-                List<HistorialMedico> listaHistorial = control.traerHistorialesPorPaciente(dni);
-                response.getWriter().write(toJsonArray(listaHistorial).toString());
+                List<HistorialListado> listaHistorial = control.traerListadoHistorialesPorPaciente(dni);
+                JsonGenerator g = SalidaJson.abrir(response);
+                g.writeStartArray();
+                listaHistorial.forEach(h -> escribir(g, h));
+                g.writeEnd().close();
             } else {
                 response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
                 response.getWriter().write("{\"error\": \"Falta parámetro id o dni\"}");
             }
         } catch (Exception e) {
             e.printStackTrace();
-            response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
-            response.getWriter().write("{\"error\": \"Error al obtener historial: " + e.getMessage() + "\"}");
+            SalidaJson.error(response, "Error al obtener historial: " + e.getMessage());
         }
     }
 
-    @Override
-    protected void doPost(HttpServletRequest request, HttpServletResponse response)
+    private void procesarPost(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
 
         response.setContentType("application/json");
@@ -84,8 +131,7 @@ public class SvHistorialMedico extends HttpServlet {
             // Extract data
             String dni = jsonObject.getString("dni");
             String fechaStr = jsonObject.getString("fecha");
-            SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
-            Date fecha = sdf.parse(fechaStr);
+            Date fecha = Date.from(LocalDate.parse(fechaStr).atStartOfDay(ZoneId.systemDefault()).toInstant());
 
             String motivo = jsonObject.getString("motivo");
             String diagnostico = jsonObject.getString("diagnostico", "");
@@ -125,12 +171,41 @@ public class SvHistorialMedico extends HttpServlet {
     }
 
     // Helpers
-    private javax.json.JsonArray toJsonArray(List<HistorialMedico> historial) {
-        JsonArrayBuilder builder = Json.createArrayBuilder();
-        for (HistorialMedico h : historial) {
-            builder.add(toJson(h));
+    // El listado no trae el odontograma: solo su id; el cuerpo se pide con ?id= o SvOdontograma?dni=
+    private static void escribir(JsonGenerator g, HistorialListado h) {
+        g.writeStartObject();
+        if (h.getId() != null)
+            g.write("id", h.getId());
+        if (h.getFecha_registro() != null)
+            g.write("fecha_registro", formatearFecha(h.getFecha_registro()));
+        if (h.getNumero_consulta() != null)
+            g.write("numero_consulta", h.getNumero_consulta());
+        SalidaJson.agregar(g, "motivo_consulta", h.getMotivo_consulta());
+        SalidaJson.agregar(g, "diagnostico", h.getDiagnostico());
+        SalidaJson.agregar(g, "tratamiento", h.getTratamiento());
+        SalidaJson.agregar(g, "medicamentos", h.getMedicamentos());
+        SalidaJson.agregar(g, "notas_adicionales", h.getNotas_adicionales());
+        if (h.getDebe() != null)
+            g.write("debe", h.getDebe());
+        if (h.getHaber() != null)
+            g.write("haber", h.getHaber());
+        if (h.getSaldo() != null)
+            g.write("saldo", h.getSaldo());
+        if (h.getIdOdontograma() != null)
+            g.write("idOdontograma", h.getIdOdontograma());
+        SalidaJson.agregar(g, "dni", h.getDniPaciente());
+        g.writeEnd();
+    }
+
+    // JPA devuelve java.sql.Date o Timestamp según la columna; java.sql.Date no soporta toInstant()
+    private static String formatearFecha(Date fecha) {
+        LocalDateTime momento;
+        if (fecha instanceof java.sql.Date) {
+            momento = ((java.sql.Date) fecha).toLocalDate().atStartOfDay();
+        } else {
+            momento = fecha.toInstant().atZone(ZoneId.systemDefault()).toLocalDateTime();
         }
-        return builder.build();
+        return FECHA_HORA.format(momento);
     }
 
     private JsonObject toJson(HistorialMedico h) {
@@ -138,8 +213,7 @@ public class SvHistorialMedico extends HttpServlet {
         if (h.getId() != null)
             builder.add("id", h.getId());
         if (h.getFecha_registro() != null) {
-            SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
-            builder.add("fecha_registro", sdf.format(h.getFecha_registro()));
+            builder.add("fecha_registro", formatearFecha(h.getFecha_registro()));
         }
         if (h.getNumero_consulta() != null)
             builder.add("numero_consulta", h.getNumero_consulta());
@@ -0,0 +1,81 @@
+package servlets;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Map;
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import logica.Controladora;
+import logica.Importador;
+
+/**
+ * POST /SvImportacion?formato=csv|ndjson&tipo=paciente|turno|historial
+ * El cuerpo se procesa a medida que llega; la respuesta resume filas
+ * insertadas, duplicadas y errores por línea.
+ */
+@WebServlet(name = "SvImportacion", urlPatterns = { "/SvImportacion" })
+public class SvImportacion extends HttpServlet {
+
+    private Controladora control;
+
+    @Override
+    public void init() throws ServletException {
+        control = ContenedorAplicacion.get(getServletContext()).getControladora();
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+
+        request.setCharacterEncoding("UTF-8");
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+
+        String formato = request.getParameter("formato");
+        if (formato == null) {
+            String contentType = request.getContentType();
+            formato = contentType != null && contentType.contains("csv") ? "csv" : "ndjson";
+        }
+        if (!"csv".equalsIgnoreCase(formato) && !"ndjson".equalsIgnoreCase(formato)) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            response.getWriter().print(Json.createObjectBuilder()
+                    .add("error", "Formato no soportado (csv o ndjson): " + formato)
+                    .build().toString());
+            return;
+        }
+        String tipo = request.getParameter("tipo");
+
+        try {
+            long inicio = System.currentTimeMillis();
+            Importador.ResultadoImportacion r = control.importar(request.getReader(), formato, tipo);
+
+            JsonArrayBuilder errores = Json.createArrayBuilder();
+            for (Map.Entry<Integer, String> e : r.getErrores().entrySet()) {
+                errores.add(Json.createObjectBuilder()
+                        .add("linea", e.getKey())
+                        .add("error", e.getValue() != null ? e.getValue() : ""));
+            }
+            JsonObject resumen = Json.createObjectBuilder()
+                    .add("procesadas", r.getProcesadas())
+                    .add("insertadas", r.getInsertadas())
+                    .add("duplicadas", r.getDuplicadas())
+                    .add("cantidadErrores", r.getCantidadErrores())
+                    .add("errores", errores)
+                    .add("tiempoMs", System.currentTimeMillis() - inicio)
+                    .build();
+
+            try (PrintWriter out = response.getWriter()) {
+                out.print(resumen.toString());
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            SalidaJson.error(response, "Error en la importación: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package servlets;
+
+import Persistencia.DataSourceMedido;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Map;
+import javax.json.Json;
+import javax.json.JsonObjectBuilder;
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+@WebServlet(name = "SvMetricas", urlPatterns = { "/SvMetricas" })
+public class SvMetricas extends HttpServlet {
+
+    private ContenedorAplicacion contenedor;
+
+    @Override
+    public void init() throws ServletException {
+        contenedor = ContenedorAplicacion.get(getServletContext());
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+
+        JsonObjectBuilder metricas = Json.createObjectBuilder()
+                .add("pool", metricasPool(contenedor.getDataSource()))
+                .add("cache", metricasMapa(contenedor.getControladora().estadisticasCache()))
+                .add("coalescencia", metricasMapa(contenedor.getControladora().estadisticasCoalescencia()))
+                .add("ejecutores", contenedor.getEjecutores().metricas())
+                .add("compresion", FiltroCompresion.metricas())
+                .add("eventos", contenedor.getDifusor().metricas());
+
+        try (PrintWriter out = response.getWriter()) {
+            out.print(metricas.build().toString());
+        }
+    }
+
+    private JsonObjectBuilder metricasMapa(Map<String, Object> estadisticas) {
+        JsonObjectBuilder builder = Json.createObjectBuilder();
+        for (Map.Entry<String, Object> e : estadisticas.entrySet()) {
+            if (e.getValue() instanceof Number) {
+                builder.add(e.getKey(), ((Number) e.getValue()).longValue());
+            } else {
+                builder.add(e.getKey(), String.valueOf(e.getValue()));
+            }
+        }
+        return builder;
+    }
+
+    private JsonObjectBuilder metricasPool(DataSourceMedido ds) {
+        if (ds == null) {
+            return Json.createObjectBuilder()
+                    .add("tipo", "eclipselink-interno");
+        }
+        return Json.createObjectBuilder()
+                .add("tipo", "jndi")
+                .add("activas", ds.getActivas())
+                .add("ociosas", ds.getIdle())
+                .add("tamanio", ds.getTamanio())
+                .add("maximo", ds.getMaximo())
+                .add("prestamos", ds.getPrestamos())
+                .add("errores", ds.getErrores())
+                .add("esperaMs", Json.createObjectBuilder()
+                        .add("p50", ds.percentilEsperaMs(50))
+                        .add("p95", ds.percentilEsperaMs(95))
+                        .add("p99", ds.percentilEsperaMs(99)));
+    }
+}
@@ -1,35 +1,57 @@
 package servlets;
 
-import Persistencia.HistorialMedicoJpaController;
-import Persistencia.OdontogramaJpaController;
-import Persistencia.PacienteJpaController;
+import logica.Controladora;
 import logica.HistorialMedico;
 import logica.Odontograma;
 import logica.Paciente;
 
 import java.io.IOException;
 import java.util.Date;
-import java.util.List;
 import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-@WebServlet(name = "SvOdontograma", urlPatterns = { "/SvOdontograma" })
+@WebServlet(name = "SvOdontograma", urlPatterns = { "/SvOdontograma" }, asyncSupported = true)
 public class SvOdontograma extends HttpServlet {
 
-    OdontogramaJpaController controlOdonto = new OdontogramaJpaController();
-    PacienteJpaController controlPaciente = new PacienteJpaController();
-    HistorialMedicoJpaController controlHistorial = new HistorialMedicoJpaController();
+    private Controladora control;
+    private AdmisionEndpoint admision;
+
+    @Override
+    public void init() throws ServletException {
+        control = ContenedorAplicacion.get(getServletContext()).getControladora();
+        admision = ContenedorAplicacion.get(getServletContext()).getEjecutores().admision(getServletConfig());
+    }
 
     protected void processRequest(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
     }
 
+    // Los do* pasan por el control de admisión del endpoint antes de ir al ejecutor
     @Override
     protected void doGet(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
+        // Datos del paciente y su último odontograma: los cubre el sello del paciente
+        String dni = request.getParameter("dni");
+        if (dni != null && !dni.isEmpty()) {
+            long version = control.versionPaciente(dni);
+            if (GetCondicional.noModificado(request, response, "odontograma-" + version, version)) {
+                return;
+            }
+        }
+        admision.lectura(request, response, this::procesarGet);
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        admision.escritura(request, response, this::procesarPost);
+    }
+
+    private void procesarGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
 
         response.setContentType("application/json");
         response.setCharacterEncoding("UTF-8");
@@ -39,57 +61,11 @@ public class SvOdontograma extends HttpServlet {
 
             if (dni != null && !dni.isEmpty()) {
                 // Buscar paciente por DNI
-                Paciente paciente = controlPaciente.findPaciente(dni);
+                Paciente paciente = control.traerPaciente(dni);
 
                 if (paciente != null) {
-                    // ESTRATEGIA: Traer todos los historiales y filtrar manualmente por DNI del
-                    // paciente
-                    // Esto evita problemas de Lazy Loading con la lista
-                    // paciente.getHistorialesMedicos()
-                    List<HistorialMedico> todosHistoriales = controlHistorial.findHistorialMedicoEntities();
-                    Odontograma ultimoOdontograma = null;
-
-                    // Iterar para encontrar el del paciente y que tenga odontograma
-                    if (todosHistoriales != null) {
-                        for (HistorialMedico h : todosHistoriales) {
-                            if (h.getPaciente() != null && h.getPaciente().getDniPaciente().equals(dni)) {
-                                if (h.getOdontograma() != null) {
-                                    // Asumimos que el último encontrado en la lista (o ID más alto) es el reciente
-                                    // Mejor estrategia: comparar IDs o fechas si es necesario.
-                                    // Por ahora, nos quedamos con el último que aparezca en la iteración
-                                    // (sobrescribiendo)
-                                    // Ojo: JPA no garantiza orden. Deberíamos buscar el de ID mayor.
-                                    // Lógica corregida: Priorizar Fecha Descendente, luego ID Descendente
-                                    if (ultimoOdontograma == null) {
-                                        ultimoOdontograma = h.getOdontograma();
-                                    } else {
-                                        HistorialMedico currentH = h;
-                                        HistorialMedico lastH = ultimoOdontograma.getHistorialMedico();
-
-                                        boolean isNewer = false;
-                                        if (currentH.getFecha_registro() != null && lastH.getFecha_registro() != null) {
-                                            if (currentH.getFecha_registro().after(lastH.getFecha_registro())) {
-                                                isNewer = true;
-                                            } else if (currentH.getFecha_registro().equals(lastH.getFecha_registro())) {
-                                                if (currentH.getId() > lastH.getId()) {
-                                                    isNewer = true;
-                                                }
-                                            }
-                                        } else {
-                                            // Fallback ID si falta fecha
-                                            if (currentH.getId() > lastH.getId()) {
-                                                isNewer = true;
-                                            }
-                                        }
-
-                                        if (isNewer) {
-                                            ultimoOdontograma = h.getOdontograma();
-                                        }
-                                    }
-                                }
-                            }
-                        }
-                    }
+                    // Solo el odontograma más reciente (fecha DESC, id DESC) resuelto en la base
+                    Odontograma ultimoOdontograma = control.traerUltimoOdontogramaPorPaciente(dni);
 
                     String jsonResponse = "{";
                     jsonResponse += "\"paciente\": {";
@@ -129,8 +105,7 @@ public class SvOdontograma extends HttpServlet {
         }
     }
 
-    @Override
-    protected void doPost(HttpServletRequest request, HttpServletResponse response)
+    private void procesarPost(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
 
         response.setContentType("application/json");
@@ -149,7 +124,7 @@ public class SvOdontograma extends HttpServlet {
                 return;
             }
 
-            Paciente paciente = controlPaciente.findPaciente(dni);
+            Paciente paciente = control.traerPaciente(dni);
             if (paciente == null) {
                 response.setStatus(HttpServletResponse.SC_NOT_FOUND);
                 response.getWriter().write("{\"status\":\"error\", \"message\":\"Paciente no encontrado\"}");
@@ -174,7 +149,7 @@ public class SvOdontograma extends HttpServlet {
 
             // Persistir Historial (que por Cascade crea el Odontograma)
             // Asumimos que create() de Historial maneja cascade
-            controlHistorial.create(historial);
+            control.registrarHistorialMedico(historial);
 
             response.setStatus(HttpServletResponse.SC_OK);
             response.getWriter()
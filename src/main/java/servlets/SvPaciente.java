@@ -1,32 +1,46 @@
 package servlets;
 
+import logica.VersionesDatos;
 import logica.Controladora;
 import logica.Paciente;
+import logica.PacienteListado;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.StringReader;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
 import java.util.List;
 import javax.json.Json;
-import javax.json.JsonArrayBuilder;
 import javax.json.JsonObject;
 import javax.json.JsonObjectBuilder;
 import javax.json.JsonReader;
+import javax.json.stream.JsonGenerator;
 import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-@WebServlet(name = "SvPaciente", urlPatterns = { "/SvPaciente" })
+@WebServlet(name = "SvPaciente", urlPatterns = { "/SvPaciente" }, asyncSupported = true)
 public class SvPaciente extends HttpServlet {
 
+    private static final int LIMITE_BUSQUEDA_DEFAULT = 20;
+    private static final int LIMITE_BUSQUEDA_MAX = 100;
+    private static final int LIMITE_PAGINA_MAX = 500;
+    // DateTimeFormatter es inmutable: uno solo para todas las filas y todos los hilos
+    private static final DateTimeFormatter FECHA = DateTimeFormatter.ISO_LOCAL_DATE;
+
     private Controladora control;
+    private AdmisionEndpoint admision;
 
     @Override
     public void init() throws ServletException {
         try {
             System.out.println("Iniciando Servlet SvPaciente...");
-            control = new Controladora();
+            control = ContenedorAplicacion.get(getServletContext()).getControladora();
+            admision = ContenedorAplicacion.get(getServletContext()).getEjecutores().admision(getServletConfig());
             System.out.println("Controladora iniciada correctamente en SvPaciente");
         } catch (Exception e) {
             System.out.println("ERROR CRÍTICO al iniciar Controladora en SvPaciente: " + e.getMessage());
@@ -39,16 +53,61 @@ public class SvPaciente extends HttpServlet {
         response.setContentType("text/html;charset=UTF-8");
     }
 
+    // Los do* pasan por el control de admisión del endpoint antes de ir al ejecutor
     @Override
     protected void doGet(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
+        // Sin cambios desde la copia del navegador: 304 sin pasar por la base
+        String dni = request.getParameter("dni");
+        long version = dni != null ? control.versionPaciente(dni)
+                : control.versionColeccion(VersionesDatos.Coleccion.PACIENTES);
+        if (GetCondicional.noModificado(request, response, (dni != null ? "paciente-" : "pacientes-") + version,
+                version)) {
+            return;
+        }
+        admision.lectura(request, response, this::procesarGet);
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        admision.escritura(request, response, this::procesarPost);
+    }
+
+    @Override
+    protected void doPut(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        admision.escritura(request, response, this::procesarPut);
+    }
+
+    @Override
+    protected void doDelete(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        admision.escritura(request, response, this::procesarDelete);
+    }
+
+    private void procesarGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
         response.setContentType("application/json");
         response.setCharacterEncoding("UTF-8");
 
         try {
             String dni = request.getParameter("dni");
-
-            if (dni != null) {
+            String q = request.getParameter("q");
+
+            if (request.getParameter("since") != null) {
+                // Solo lo que cambió desde ?since=, con las bajas (ver SincronizacionDelta)
+                SincronizacionDelta.responder(request, response, control, VersionesDatos.Coleccion.PACIENTES,
+                        control::traerPacientesModificadosDesde, SvPaciente::escribirListado);
+            } else if (q != null) {
+                // Búsqueda por prefijo de nombre/apellido/DNI, sin acentos ni mayúsculas
+                int limite = parseLimite(request.getParameter("limit"), LIMITE_BUSQUEDA_DEFAULT, LIMITE_BUSQUEDA_MAX);
+                List<PacienteListado> encontrados = control.buscarPacientes(q, limite);
+                JsonGenerator g = SalidaJson.abrir(response);
+                g.writeStartArray();
+                encontrados.forEach(p -> escribirListado(g, p));
+                g.writeEnd().close();
+            } else if (dni != null) {
                 // Traer un paciente específico
                 Paciente pac = control.traerPaciente(dni);
                 if (pac != null) {
@@ -57,21 +116,42 @@ public class SvPaciente extends HttpServlet {
                     response.setStatus(HttpServletResponse.SC_NOT_FOUND);
                     response.getWriter().write("{\"error\": \"Paciente no encontrado\"}");
                 }
+            } else if (request.getParameter("limit") != null) {
+                // Paginado por cursor: ?limit=N&after=<último DNI recibido>
+                int limite = parseLimite(request.getParameter("limit"), LIMITE_PAGINA_MAX, LIMITE_PAGINA_MAX);
+                String after = request.getParameter("after");
+                List<PacienteListado> pagina = control.traerPaginaPacientes(
+                        after != null && !after.isEmpty() ? after : null, limite + 1);
+
+                boolean hayMas = pagina.size() > limite;
+                if (hayMas) {
+                    pagina = pagina.subList(0, limite);
+                }
+                JsonGenerator g = SalidaJson.abrir(response);
+                g.writeStartObject().writeStartArray("items");
+                pagina.forEach(p -> escribirListado(g, p));
+                g.writeEnd();
+                if (hayMas) {
+                    g.write("next", pagina.get(pagina.size() - 1).getDni());
+                } else {
+                    g.writeNull("next");
+                }
+                g.writeEnd().close();
             } else {
-                // Traer todos los pacientes
-                List<Paciente> listaPacientes = control.traerPacientes();
-                response.getWriter().write(toJsonArray(listaPacientes).toString());
+                // Traer todos los pacientes: por lotes, cada uno sale a la respuesta al leerse
+                JsonGenerator g = SalidaJson.abrir(response);
+                g.writeStartArray();
+                control.recorrerListadoPacientes(LIMITE_PAGINA_MAX, p -> escribirListado(g, p));
+                g.writeEnd().close();
             }
         } catch (Exception e) {
             System.out.println("Error en SvPaciente doGet: ");
             e.printStackTrace();
-            response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
-            response.getWriter().write("{\"error\": \"" + e.getMessage() + "\"}");
+            SalidaJson.error(response, e.getMessage());
         }
     }
 
-    @Override
-    protected void doPost(HttpServletRequest request, HttpServletResponse response)
+    private void procesarPost(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
 
         response.setContentType("application/json");
@@ -144,8 +224,7 @@ public class SvPaciente extends HttpServlet {
         }
     }
 
-    @Override
-    protected void doPut(HttpServletRequest request, HttpServletResponse response)
+    private void procesarPut(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
         response.setContentType("application/json");
         response.setCharacterEncoding("UTF-8");
@@ -200,8 +279,7 @@ public class SvPaciente extends HttpServlet {
         }
     }
 
-    @Override
-    protected void doDelete(HttpServletRequest request, HttpServletResponse response)
+    private void procesarDelete(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
 
         response.setContentType("application/json");
@@ -224,13 +302,34 @@ public class SvPaciente extends HttpServlet {
         }
     }
 
+    private int parseLimite(String limitStr, int porDefecto, int maximo) {
+        if (limitStr == null || limitStr.isEmpty()) {
+            return porDefecto;
+        }
+        try {
+            int limite = Integer.parseInt(limitStr);
+            return Math.max(1, Math.min(limite, maximo));
+        } catch (NumberFormatException e) {
+            return porDefecto;
+        }
+    }
+
     // Helpers para JSON manual
-    private javax.json.JsonArray toJsonArray(List<Paciente> pacientes) {
-        JsonArrayBuilder builder = Json.createArrayBuilder();
-        for (Paciente p : pacientes) {
-            builder.add(toJson(p));
+    // Los listados no incluyen antecedents; se piden con ?dni= al abrir un paciente.
+    // También arma el paciente de los eventos paciente-creado (DifusorEventos)
+    static void escribirListado(JsonGenerator g, PacienteListado p) {
+        g.writeStartObject();
+        SalidaJson.agregar(g, "dniPaciente", p.getDni());
+        SalidaJson.agregar(g, "nombre", p.getNombre());
+        SalidaJson.agregar(g, "apellido", p.getApellido());
+        SalidaJson.agregar(g, "telefono", p.getTelefono());
+        SalidaJson.agregar(g, "email", p.getEmail());
+        SalidaJson.agregar(g, "direccion", p.getDireccion());
+        SalidaJson.agregar(g, "obraSocial", p.getObraSocial());
+        if (p.getFecha_nac() != null) {
+            g.write("fecha_nac", formatearFecha(p.getFecha_nac()));
         }
-        return builder.build();
+        g.writeEnd();
     }
 
     private JsonObject toJson(Paciente p) {
@@ -252,13 +351,18 @@ public class SvPaciente extends HttpServlet {
         if (p.getAntecedents() != null)
             builder.add("antecedents", p.getAntecedents());
         if (p.getFecha_nac() != null) {
-            // Force format yyyy-MM-dd
-            java.text.SimpleDateFormat sdf = new java.text.SimpleDateFormat("yyyy-MM-dd");
-            builder.add("fecha_nac", sdf.format(p.getFecha_nac()));
+            builder.add("fecha_nac", formatearFecha(p.getFecha_nac()));
         }
         return builder.build();
     }
 
+    // yyyy-MM-dd. JPA devuelve java.sql.Date, que no soporta toInstant()
+    private static String formatearFecha(Date fecha) {
+        LocalDate dia = fecha instanceof java.sql.Date ? ((java.sql.Date) fecha).toLocalDate()
+                : fecha.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+        return FECHA.format(dia);
+    }
+
     @Override
     public String getServletInfo() {
         return "Short description";
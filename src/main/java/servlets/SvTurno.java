@@ -1,70 +1,178 @@
 package servlets;
 
+import Persistencia.exceptions.ConflictoTurnoException;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.List;
 import javax.json.Json;
-import javax.json.JsonArrayBuilder;
 import javax.json.JsonObject;
-import javax.json.JsonObjectBuilder;
 import javax.json.JsonReader;
+import javax.json.stream.JsonGenerator;
 import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import logica.VersionesDatos;
 import logica.Controladora;
 import logica.Turno;
+import logica.TurnoListado;
 import logica.Paciente;
 
-@WebServlet(name = "SvTurno", urlPatterns = { "/SvTurno" })
+@WebServlet(name = "SvTurno", urlPatterns = { "/SvTurno" }, asyncSupported = true)
 public class SvTurno extends HttpServlet {
-    Controladora control = new Controladora();
-    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+    private static final int LIMITE_PAGINA_MAX = 500;
+
+    private Controladora control;
+    private AdmisionEndpoint admision;
+    // DateTimeFormatter es inmutable: se comparte entre hilos sin sincronizar
+    private static final DateTimeFormatter FECHA = DateTimeFormatter.ISO_LOCAL_DATE;
 
+    @Override
+    public void init() throws ServletException {
+        control = ContenedorAplicacion.get(getServletContext()).getControladora();
+        admision = ContenedorAplicacion.get(getServletContext()).getEjecutores().admision(getServletConfig());
+    }
+
+    // Los do* pasan por el control de admisión del endpoint antes de ir al ejecutor
     @Override
     protected void doGet(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
+        // El listado trae nombre y apellido del paciente: cambia con turnos y con pacientes
+        long turnos = control.versionColeccion(VersionesDatos.Coleccion.TURNOS);
+        long pacientes = control.versionColeccion(VersionesDatos.Coleccion.PACIENTES);
+        if (GetCondicional.noModificado(request, response, "turnos-" + turnos + "-" + pacientes,
+                Math.max(turnos, pacientes))) {
+            return;
+        }
+        admision.lectura(request, response, this::procesarGet);
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        admision.escritura(request, response, this::procesarPost);
+    }
+
+    private void procesarGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
 
         response.setContentType("application/json");
         response.setCharacterEncoding("UTF-8");
 
+        // Los parámetros se validan antes de empezar a escribir: un error después del
+        // primer byte ya no puede cambiar el estado de la respuesta
+        String desdeStr = request.getParameter("desde");
+        String hastaStr = request.getParameter("hasta");
+        String limitStr = request.getParameter("limit");
+        String after = request.getParameter("after");
+        LocalDate desde = null;
+        LocalDate hasta = null;
+        LocalDate despuesDeFecha = null;
+        Integer despuesDeId = null;
         try {
-            List<Turno> listaTurnos = control.getTurnos();
-            JsonArrayBuilder jsonArray = Json.createArrayBuilder();
-
-            for (Turno t : listaTurnos) {
-                JsonObjectBuilder turnoJson = Json.createObjectBuilder()
-                        .add("id", t.getId_turno())
-                        .add("fecha", dateFormat.format(t.getFecha_Turno()))
-                        .add("hora", t.getHora_Turno())
-                        .add("motivo", t.getAfeccion() != null ? t.getAfeccion() : "")
-                        .add("estado", t.getEstado() != null ? t.getEstado().toString() : "PENDIENTE")
-                        .add("observaciones", t.getObservaciones() != null ? t.getObservaciones() : "");
-
-                if (t.getPacien() != null) {
-                    turnoJson.add("paciente", Json.createObjectBuilder()
-                            .add("dni", t.getPacien().getDniPaciente())
-                            .add("nombre", t.getPacien().getNombre())
-                            .add("apellido", t.getPacien().getApellido()));
+            if (desdeStr != null && !desdeStr.isEmpty()) {
+                desde = LocalDate.parse(desdeStr, FECHA);
+                hasta = (hastaStr != null && !hastaStr.isEmpty()) ? LocalDate.parse(hastaStr, FECHA) : desde;
+            }
+            if (after != null && !after.isEmpty()) {
+                int sep = after.lastIndexOf('_');
+                if (sep < 0) {
+                    responderParametroInvalido(response, "Cursor inválido");
+                    return;
                 }
-
-                jsonArray.add(turnoJson);
+                despuesDeFecha = LocalDate.parse(after.substring(0, sep), FECHA);
+                despuesDeId = Integer.valueOf(after.substring(sep + 1));
             }
+        } catch (DateTimeParseException e) {
+            responderParametroInvalido(response, "Fecha inválida (yyyy-MM-dd): " + e.getParsedString());
+            return;
+        } catch (NumberFormatException e) {
+            responderParametroInvalido(response, "Cursor inválido");
+            return;
+        }
 
-            try (PrintWriter out = response.getWriter()) {
-                out.print(jsonArray.build().toString());
+        try {
+            if (request.getParameter("since") != null) {
+                // Solo lo que cambió desde ?since=, con las bajas (ver SincronizacionDelta)
+                SincronizacionDelta.responder(request, response, control, VersionesDatos.Coleccion.TURNOS,
+                        control::traerTurnosModificadosDesde, SvTurno::escribir);
+            } else if (desde != null) {
+                // ?desde=yyyy-MM-dd&hasta=yyyy-MM-dd filtra en la base (semana, mes visible, etc.)
+                List<TurnoListado> listaTurnos = control.traerListadoTurnosPorRangoFecha(desde, hasta);
+                JsonGenerator g = SalidaJson.abrir(response);
+                g.writeStartArray();
+                listaTurnos.forEach(t -> escribir(g, t));
+                g.writeEnd().close();
+            } else if (limitStr != null) {
+                // Paginado por cursor: ?limit=N&after=<fecha>_<id> del último turno recibido
+                int limite = parseLimite(limitStr);
+                List<TurnoListado> listaTurnos = control.traerPaginaTurnos(despuesDeFecha, despuesDeId, limite + 1);
+                String next = null;
+                if (listaTurnos.size() > limite) {
+                    listaTurnos = listaTurnos.subList(0, limite);
+                    TurnoListado ultimo = listaTurnos.get(limite - 1);
+                    next = ultimo.getFecha().format(FECHA) + "_" + ultimo.getId();
+                }
+                JsonGenerator g = SalidaJson.abrir(response);
+                g.writeStartObject().writeStartArray("items");
+                listaTurnos.forEach(t -> escribir(g, t));
+                g.writeEnd();
+                if (next != null) {
+                    g.write("next", next);
+                } else {
+                    g.writeNull("next");
+                }
+                g.writeEnd().close();
+            } else {
+                // Listado completo: se lee por lotes y cada turno sale a la respuesta al leerse
+                JsonGenerator g = SalidaJson.abrir(response);
+                g.writeStartArray();
+                control.recorrerListadoTurnos(LIMITE_PAGINA_MAX, t -> escribir(g, t));
+                g.writeEnd().close();
             }
         } catch (Exception e) {
-            response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
-            response.getWriter().print("{\"error\": \"" + e.getMessage() + "\"}");
+            SalidaJson.error(response, e.getMessage());
         }
     }
 
-    @Override
-    protected void doPost(HttpServletRequest request, HttpServletResponse response)
+    private void responderParametroInvalido(HttpServletResponse response, String mensaje) throws IOException {
+        response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+        response.getWriter().print(Json.createObjectBuilder().add("error", mensaje).build().toString());
+    }
+
+    // También lo usa DifusorEventos para los eventos de turno
+    static void escribir(JsonGenerator g, TurnoListado t) {
+        g.writeStartObject()
+                .write("id", t.getId())
+                .write("fecha", t.getFecha().format(FECHA))
+                .write("hora", t.getHora() != null ? t.getHora() : "")
+                .write("duracion", t.getDuracionMinutos())
+                .write("motivo", t.getAfeccion() != null ? t.getAfeccion() : "")
+                .write("estado", t.getEstado() != null ? t.getEstado().toString() : "PENDIENTE")
+                .write("observaciones", t.getObservaciones() != null ? t.getObservaciones() : "")
+                .write("version", t.getVersion());
+        if (t.getDniPaciente() != null) {
+            g.writeStartObject("paciente")
+                    .write("dni", t.getDniPaciente())
+                    .write("nombre", t.getNombrePaciente())
+                    .write("apellido", t.getApellidoPaciente())
+                    .writeEnd();
+        }
+        g.writeEnd();
+    }
+
+    private int parseLimite(String limitStr) {
+        try {
+            return Math.max(1, Math.min(Integer.parseInt(limitStr), LIMITE_PAGINA_MAX));
+        } catch (NumberFormatException e) {
+            return LIMITE_PAGINA_MAX;
+        }
+    }
+
+    private void procesarPost(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
 
         try (JsonReader reader = Json.createReader(request.getReader())) {
@@ -77,7 +185,15 @@ public class SvTurno extends HttpServlet {
             String estado = json.getString("estado");
             String observaciones = json.getString("observaciones");
 
-            Date fecha = dateFormat.parse(fechaStr);
+            LocalDate fecha = LocalDate.parse(fechaStr, FECHA);
+            Integer duracion = json.containsKey("duracion") && !json.isNull("duracion") ? json.getInt("duracion") : null;
+            if (duracion != null && (duracion < 1 || duracion > Turno.DURACION_MAXIMA_MINUTOS)) {
+                response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+                response.getWriter().print(Json.createObjectBuilder()
+                        .add("error", "La duración debe estar entre 1 y " + Turno.DURACION_MAXIMA_MINUTOS + " minutos")
+                        .build().toString());
+                return;
+            }
             Paciente pac = control.traerPaciente(dniPaciente);
 
             if (json.containsKey("id") && !json.isNull("id")) {
@@ -90,17 +206,38 @@ public class SvTurno extends HttpServlet {
                     t.setAfeccion(motivo);
                     t.setEstado(Turno.EstadoTurno.valueOf(estado));
                     t.setObservaciones(observaciones);
+                    if (duracion != null) {
+                        t.setDuracionMinutos(duracion);
+                    }
+                    // Versión que vio el cliente; sin ella, gana la última escritura como antes
+                    if (json.containsKey("version") && !json.isNull("version")) {
+                        t.setVersion(json.getInt("version"));
+                    }
                     control.editarTurno(t);
                 }
             } else {
                 Turno t = new Turno(fecha, hora, motivo, pac, observaciones);
                 t.setEstado(Turno.EstadoTurno.valueOf(estado));
+                if (duracion != null) {
+                    t.setDuracionMinutos(duracion);
+                }
                 control.crearTurno(t);
             }
 
             response.setStatus(HttpServletResponse.SC_OK);
             response.getWriter().print("{\"mensaje\": \"Turno guardado correctamente\"}");
 
+        } catch (ConflictoTurnoException e) {
+            // El cliente recarga los turnos y reintenta con los datos actuales
+            response.setStatus(HttpServletResponse.SC_CONFLICT);
+            response.getWriter().print(Json.createObjectBuilder()
+                    .add("error", e.getMessage())
+                    .add("conflicto", e.getTipo().toString())
+                    .build().toString());
+        } catch (DateTimeParseException | IllegalArgumentException e) {
+            // Fecha, hora o estado mal formados
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            response.getWriter().print(Json.createObjectBuilder().add("error", e.getMessage()).build().toString());
         } catch (Exception e) {
             response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
             response.getWriter().print("{\"error\": \"" + e.getMessage() + "\"}");
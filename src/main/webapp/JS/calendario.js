@@ -20,6 +20,7 @@ document.addEventListener('DOMContentLoaded', () => {
     cargarPacientesSelect();
     cargarTurnos();
     renderizarCalendario();
+    escucharEventos();
 
     // Establecer fecha mínima en el input de fecha (hoy)
     const hoy = new Date().toISOString().split('T')[0];
@@ -47,6 +48,66 @@ async function cargarTurnos() {
     }
 }
 
+// Cambios en vivo desde SvEventos: se aplican sobre el arreglo local sin volver a pedir todo
+let eventos = null;
+let eventosConectados = false;
+
+function escucharEventos() {
+    if (!window.EventSource) return;
+    eventos = new EventSource('SvEventos');
+
+    let caido = false;
+    eventos.onopen = () => {
+        // Al reconectar se pudo haber perdido algún evento: se recarga (con ETag suele ser un 304)
+        if (caido) cargarTurnos();
+        caido = false;
+        eventosConectados = true;
+    };
+    eventos.onerror = () => {
+        caido = true;
+        eventosConectados = false;
+    };
+
+    ['turno-creado', 'turno-actualizado', 'turno-cancelado'].forEach(tipo => {
+        eventos.addEventListener(tipo, e => aplicarTurno(JSON.parse(e.data)));
+    });
+    eventos.addEventListener('turno-eliminado', e => {
+        const { id } = JSON.parse(e.data);
+        turnos = turnos.filter(t => t.id !== id);
+        refrescarVista();
+    });
+    eventos.addEventListener('paciente-creado', e => agregarPacienteSelect(JSON.parse(e.data)));
+    eventos.addEventListener('recargar', () => {
+        cargarPacientesSelect();
+        cargarTurnos();
+    });
+}
+
+function aplicarTurno(t) {
+    const turno = { ...t, fecha: new Date(t.fecha + 'T00:00:00') };
+    const index = turnos.findIndex(x => x.id === turno.id);
+    if (index === -1) {
+        turnos.push(turno);
+    } else if (turnos[index].version <= turno.version) {
+        turnos[index] = turno;
+    }
+    refrescarVista();
+}
+
+function refrescarVista() {
+    renderizarCalendario();
+    if (diaSeleccionado) seleccionarDia(diaSeleccionado);
+}
+
+function agregarPacienteSelect(p) {
+    const select = document.getElementById('turno-paciente');
+    if (select.querySelector(`option[value="${p.dniPaciente}"]`)) return;
+    const option = document.createElement('option');
+    option.value = p.dniPaciente;
+    option.textContent = `${p.nombre} ${p.apellido} (${p.dniPaciente})`;
+    select.appendChild(option);
+}
+
 // Cargar pacientes en el select desde el backend
 async function cargarPacientesSelect() {
     try {
@@ -298,6 +359,7 @@ async function guardarTurno(event) {
 
     if (turnoEditando) {
         turnoData.id = turnoEditando.id;
+        turnoData.version = turnoEditando.version;
     }
 
     try {
@@ -307,11 +369,24 @@ async function guardarTurno(event) {
             body: JSON.stringify(turnoData)
         });
 
+        if (response.status === 409) {
+            // Otro usuario guardó antes: se recargan los turnos para reintentar sobre datos actuales
+            const conflicto = await response.json();
+            await cargarTurnos();
+            if (conflicto.conflicto === 'MODIFICADO') {
+                cerrarModalTurno();
+                mostrarError('El turno fue modificado por otro usuario. Se recargaron los datos; vuelva a editarlo.');
+            } else {
+                mostrarError('Ya hay un turno en ese horario. Elija otra fecha u hora.');
+            }
+            return;
+        }
         if (!response.ok) throw new Error('Error al guardar el turno');
 
         mostrarExito(turnoEditando ? 'Turno actualizado' : 'Turno creado');
         cerrarModalTurno();
-        cargarTurnos(); // Recargar todo desde el server
+        // Con SvEventos conectado el cambio llega como evento
+        if (!eventosConectados) cargarTurnos();
     } catch (error) {
         console.error('Error:', error);
         mostrarError('No se pudo guardar el turno en el servidor');
@@ -5,10 +5,45 @@
 // Cargar datos al iniciar
 document.addEventListener('DOMContentLoaded', () => {
     cargarDatosDashboard();
+    escucharEventos();
 });
 
+// Cualquier cambio de turnos o pacientes (SvEventos) vuelve a pedir el dashboard, pero
+// cada pestaña lo hace a lo sumo una vez cada INTERVALO_RECARGA_MS: con muchas pestañas
+// abiertas un alta no se convierte en una ráfaga de SvDashboard completos. La espera
+// suma un azar para que las pestañas no pidan todas en el mismo instante.
+const INTERVALO_RECARGA_MS = 10000;
+const DISPERSION_RECARGA_MS = 3000;
+let recargaPendiente = null;
+let ultimaRecarga = 0;
+
+function programarRecarga() {
+    if (recargaPendiente) return;
+    const espera = Math.max(1000, ultimaRecarga + INTERVALO_RECARGA_MS - Date.now())
+        + Math.random() * DISPERSION_RECARGA_MS;
+    recargaPendiente = setTimeout(() => {
+        recargaPendiente = null;
+        cargarDatosDashboard();
+    }, espera);
+}
+
+function escucharEventos() {
+    if (!window.EventSource) return;
+    const eventos = new EventSource('SvEventos');
+    ['turno-creado', 'turno-actualizado', 'turno-cancelado', 'turno-eliminado', 'paciente-creado', 'recargar']
+        .forEach(tipo => eventos.addEventListener(tipo, programarRecarga));
+    // Tras una reconexión pudo perderse algún evento
+    let caido = false;
+    eventos.onerror = () => { caido = true; };
+    eventos.onopen = () => {
+        if (caido) programarRecarga();
+        caido = false;
+    };
+}
+
 // Cargar todos los datos desde SvDashboard
 async function cargarDatosDashboard() {
+    ultimaRecarga = Date.now();
     try {
         const response = await fetch('SvDashboard');
         if (!response.ok) throw new Error('Error al obtener datos del dashboard');
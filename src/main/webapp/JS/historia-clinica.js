@@ -77,14 +77,13 @@ async function cargarHistoriaClinica() {
     }
 
     try {
-        // Cargar datos del paciente (con timestamp ant-cache)
-        const ts = new Date().getTime();
-        const pacResponse = await fetch(`SvPaciente?dni=${dni}&t=${ts}`);
+        // Cargar datos del paciente (el servidor responde 304 si no cambió: ETag)
+        const pacResponse = await fetch(`SvPaciente?dni=${dni}`);
         if (!pacResponse.ok) throw new Error('Error al obtener datos del paciente');
         pacienteSeleccionado = await pacResponse.json();
 
-        // Cargar consultas (historial) (con timestamp ant-cache)
-        const histResponse = await fetch(`SvHistorialMedico?dni=${dni}&t=${ts}`);
+        // Cargar consultas (historial)
+        const histResponse = await fetch(`SvHistorialMedico?dni=${dni}`);
         if (!histResponse.ok) throw new Error('Error al obtener historial médico');
         const data = await histResponse.json();
 
@@ -101,7 +100,9 @@ async function cargarHistoriaClinica() {
             debe: h.debe || 0,
             haber: h.haber || 0,
             saldo: h.saldo || 0,
-            odontograma: h.odontograma ? JSON.parse(h.odontograma.estadoDientes) : {}
+            // El listado no trae el odontograma; se carga al verlo (ver cargarOdontogramaConsulta)
+            idOdontograma: h.idOdontograma || null,
+            odontograma: null
         })).sort((a, b) => {
             // Ordenar por fecha descendente
             const fechaA = new Date(a.fecha);
@@ -110,6 +111,17 @@ async function cargarHistoriaClinica() {
             return b.id - a.id;
         });
 
+        // El último odontograma se usa como base de la nueva consulta y en el reporte
+        if (consultas.length > 0 && consultas[0].idOdontograma) {
+            const odontoResponse = await fetch(`SvOdontograma?dni=${dni}`);
+            if (odontoResponse.ok) {
+                const odontoData = await odontoResponse.json();
+                if (odontoData.odontograma && odontoData.odontograma.id === consultas[0].idOdontograma) {
+                    consultas[0].odontograma = odontoData.odontograma.estadoDientes || {};
+                }
+            }
+        }
+
         mostrarDatosPaciente(pacienteSeleccionado);
         renderizarTimeline();
 
@@ -347,7 +359,7 @@ function abrirModalNuevaConsulta() {
     if (consultas.length > 0) {
         // Al estar ordenado descendente (fecha más reciente primero en índice 0),
         // tomamos la posición 0 como la última consulta válida.
-        odontogramaActual = JSON.parse(JSON.stringify(consultas[0].odontograma));
+        odontogramaActual = JSON.parse(JSON.stringify(consultas[0].odontograma || {}));
     } else {
         inicializarOdontograma();
     }
@@ -451,11 +463,32 @@ function mostrarDatosPaciente(p) {
     document.getElementById('paciente-obra-social').textContent = p.obraSocial || '-';
 }
 
+// Trae el odontograma de una consulta la primera vez que se necesita
+async function cargarOdontogramaConsulta(consulta) {
+    if (consulta.odontograma) return consulta.odontograma;
+    if (!consulta.idOdontograma) return {};
+
+    const response = await fetch(`SvHistorialMedico?id=${consulta.id}`);
+    if (!response.ok) throw new Error('Error al obtener el odontograma');
+    const h = await response.json();
+    consulta.odontograma = h.odontograma ? JSON.parse(h.odontograma.estadoDientes) : {};
+    return consulta.odontograma;
+}
+
 // Ver odontograma de una consulta
-window.verOdontograma = function (id) {
+window.verOdontograma = async function (id) {
     const consulta = consultas.find(c => c.id === id);
     if (!consulta) return;
 
+    let odontograma;
+    try {
+        odontograma = await cargarOdontogramaConsulta(consulta);
+    } catch (error) {
+        console.error('Error:', error);
+        mostrarError('No se pudo cargar el odontograma de la consulta');
+        return;
+    }
+
     const modalHTML = `
         <div id="modal-ver-odonto" class="modal-overlay active">
             <div class="modal" style="max-width: 900px;">
@@ -483,7 +516,7 @@ window.verOdontograma = function (id) {
         vistaOdontograma = (edad !== '-' && edad < 10) ? 'nino' : 'adulto';
     }
 
-    renderizarOdontograma('odontograma-ver', consulta.odontograma, false);
+    renderizarOdontograma('odontograma-ver', odontograma, false);
 }
 
 window.cerrarModalVerOdonto = function () {
@@ -11,18 +11,38 @@ document.addEventListener('DOMContentLoaded', () => {
     cargarPacientes();
 });
 
-// Cargar lista de pacientes
+// Cargar lista de pacientes por páginas: al abrir solo la primera, el resto con
+// "Cargar más" o buscando (la búsqueda va al servidor y encuentra a cualquiera)
+const TAMANIO_PAGINA_PACIENTES = 200;
+let cursorPacientes = null;
+// Resultado de la última búsqueda: ver o editar tiene que encontrar también a esos pacientes
+let pacientesBuscados = [];
+
 async function cargarPacientes() {
-    const apiURL = 'SvPaciente';
-    console.log('Intentando cargar pacientes desde:', apiURL);
+    pacientes = [];
+    cursorPacientes = null;
+    await cargarPaginaPacientes();
+}
+
+async function cargarMasPacientes() {
+    if (cursorPacientes) {
+        await cargarPaginaPacientes();
+    }
+}
+
+async function cargarPaginaPacientes() {
+    let url = `SvPaciente?limit=${TAMANIO_PAGINA_PACIENTES}`;
+    if (cursorPacientes) {
+        url += `&after=${encodeURIComponent(cursorPacientes)}`;
+    }
     try {
-        const response = await fetch(apiURL);
-        console.log('Respuesta recibida:', response.status, response.statusText);
+        const response = await fetch(url);
         if (!response.ok) {
             throw new Error(`Error ${response.status}: ${response.statusText}`);
         }
-        pacientes = await response.json();
-        console.log('Pacientes cargados:', pacientes.length);
+        const pagina = await response.json();
+        pacientes = pacientes.concat(pagina.items);
+        cursorPacientes = pagina.next;
         renderizarTablaPacientes();
     } catch (error) {
         console.error('Error detallado al cargar pacientes:', error);
@@ -31,12 +51,19 @@ async function cargarPacientes() {
     }
 }
 
+function buscarPacienteCargado(dni) {
+    return pacientes.find(p => p.dniPaciente === dni) || pacientesBuscados.find(p => p.dniPaciente === dni);
+}
+
 // Renderizar tabla de pacientes
 function renderizarTablaPacientes() {
     const tbody = document.getElementById('tabla-pacientes');
     const totalElement = document.getElementById('total-pacientes');
 
-    totalElement.textContent = `Total: ${pacientes.length} pacientes`;
+    totalElement.textContent = cursorPacientes
+        ? `Mostrando: ${pacientes.length} pacientes (hay más)`
+        : `Total: ${pacientes.length} pacientes`;
+    document.getElementById('cargar-mas-pacientes').style.display = cursorPacientes ? '' : 'none';
 
     if (pacientes.length === 0) {
         tbody.innerHTML = `
@@ -77,25 +104,46 @@ function renderizarTablaPacientes() {
     `).join('');
 }
 
-// Buscar pacientes
+// Buscar pacientes (en el servidor, con pequeña espera entre teclas)
+let busquedaTimeout = null;
+
 function buscarPacientes() {
-    const termino = document.getElementById('buscar-paciente').value.toLowerCase();
+    clearTimeout(busquedaTimeout);
+    busquedaTimeout = setTimeout(ejecutarBusquedaPacientes, 250);
+}
+
+async function ejecutarBusquedaPacientes() {
+    const termino = document.getElementById('buscar-paciente').value.trim();
 
     if (!termino) {
         renderizarTablaPacientes();
         return;
     }
 
-    const pacientesFiltrados = pacientes.filter(p =>
-        p.nombre.toLowerCase().includes(termino) ||
-        p.apellido.toLowerCase().includes(termino) ||
-        (p.dniPaciente && p.dniPaciente.includes(termino))
-    );
+    let pacientesFiltrados = [];
+    try {
+        const response = await fetch(`SvPaciente?q=${encodeURIComponent(termino)}&limit=50`);
+        if (!response.ok) {
+            throw new Error(`Error ${response.status}: ${response.statusText}`);
+        }
+        pacientesFiltrados = await response.json();
+        pacientesBuscados = pacientesFiltrados;
+    } catch (error) {
+        console.error('Error al buscar pacientes:', error);
+        mostrarError('No se pudo realizar la búsqueda: ' + error.message);
+        return;
+    }
+
+    // El usuario siguió escribiendo mientras llegaba la respuesta
+    if (document.getElementById('buscar-paciente').value.trim() !== termino) {
+        return;
+    }
 
     const tbody = document.getElementById('tabla-pacientes');
     const totalElement = document.getElementById('total-pacientes');
 
-    totalElement.textContent = `Mostrando: ${pacientesFiltrados.length} de ${pacientes.length} pacientes`;
+    totalElement.textContent = `Encontrados: ${pacientesFiltrados.length} pacientes`;
+    document.getElementById('cargar-mas-pacientes').style.display = 'none';
 
     if (pacientesFiltrados.length === 0) {
         tbody.innerHTML = `
@@ -154,7 +202,7 @@ function cerrarModalPaciente() {
 
 // Editar paciente
 function editarPaciente(dni) {
-    const paciente = pacientes.find(p => p.dniPaciente === dni);
+    const paciente = buscarPacienteCargado(dni);
     if (!paciente) return;
 
     pacienteEditando = paciente;
@@ -238,7 +286,7 @@ async function guardarPaciente(event) {
 
 // Ver detalle del paciente
 function verDetallePaciente(dni) {
-    const paciente = pacientes.find(p => p.dniPaciente === dni);
+    const paciente = buscarPacienteCargado(dni);
     if (!paciente) return;
 
     pacienteViendose = paciente;
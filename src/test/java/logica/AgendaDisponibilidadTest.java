@@ -0,0 +1,284 @@
+package logica;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import Persistencia.ControladoraPersistencia;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Disponibilidad sin base: la persistencia se reemplaza por una que devuelve
+ * los Horario y los turnos ocupados cargados en el test y anota cada lectura
+ * de ocupación, así se ve cuándo la agenda usa la memoria y cuándo vuelve a
+ * la base.
+ */
+class AgendaDisponibilidadTest {
+
+    // Siempre en el futuro: los días pasados no tienen huecos y hoy depende de la hora
+    private static final LocalDate DIA = LocalDate.now().plusDays(7);
+
+    private PersistenciaFalsa persistencia;
+    private AgendaDisponibilidad agenda;
+
+    @BeforeEach
+    void crearAgenda() {
+        persistencia = new PersistenciaFalsa();
+        agenda = new AgendaDisponibilidad(persistencia);
+    }
+
+    // ============== APERTURA ==============
+
+    @Test
+    void sinHorariosSeUsaLaJornadaPorDefecto() {
+        List<AgendaDisponibilidad.HuecoLibre> huecos = agenda.huecosLibres(DIA, DIA, 30);
+
+        assertEquals(24, huecos.size());
+        assertHueco(huecos.get(0), "08:00", "08:30");
+        assertHueco(huecos.get(23), "19:30", "20:00");
+    }
+
+    @Test
+    void losHorariosMarcanLaApertura() {
+        persistencia.horarios.add(new Horario(1, "09:00", "12:00"));
+        persistencia.horarios.add(new Horario(2, "14:00", "16:00"));
+        persistencia.horarios.add(new Horario(3, "18:00", "17:00"));
+
+        List<AgendaDisponibilidad.HuecoLibre> huecos = agenda.huecosLibres(DIA, DIA, 60);
+
+        assertEquals(5, huecos.size());
+        assertHueco(huecos.get(0), "09:00", "10:00");
+        assertHueco(huecos.get(2), "11:00", "12:00");
+        assertHueco(huecos.get(3), "14:00", "15:00");
+        assertHueco(huecos.get(4), "15:00", "16:00");
+    }
+
+    @Test
+    void horarioInvalidoSeIgnora() {
+        persistencia.horarios.add(new Horario(1, "nueve", "12:00"));
+        persistencia.horarios.add(new Horario(2, "10:00", "11:00"));
+
+        List<AgendaDisponibilidad.HuecoLibre> huecos = agenda.huecosLibres(DIA, DIA, 30);
+
+        assertEquals(2, huecos.size());
+        assertHueco(huecos.get(0), "10:00", "10:30");
+    }
+
+    // ============== BLOQUES ==============
+
+    @Test
+    void laDuracionSeRedondeaAlBloqueSiguiente() {
+        persistencia.horarios.add(new Horario(1, "09:00", "10:00"));
+
+        List<AgendaDisponibilidad.HuecoLibre> huecos = agenda.huecosLibres(DIA, DIA, 7);
+
+        assertEquals(6, huecos.size());
+        assertHueco(huecos.get(0), "09:00", "09:10");
+        assertHueco(huecos.get(1), "09:10", "09:20");
+    }
+
+    @Test
+    void turnoFueraDeBloqueOcupaElBloqueEntero() {
+        persistencia.horarios.add(new Horario(1, "09:00", "10:00"));
+        // 09:12 por 6 minutos pisa los bloques de 09:10 y 09:15
+        persistencia.ocupados.add(new Object[] { DIA, 9 * 60 + 12, 6 });
+
+        List<AgendaDisponibilidad.HuecoLibre> huecos = agenda.huecosLibres(DIA, DIA, 5);
+
+        assertEquals(10, huecos.size());
+        assertHueco(huecos.get(1), "09:05", "09:10");
+        assertHueco(huecos.get(2), "09:20", "09:25");
+    }
+
+    // ============== OCUPACIÓN ==============
+
+    @Test
+    void losTurnosOcupadosNoDejanHueco() {
+        persistencia.horarios.add(new Horario(1, "09:00", "11:00"));
+        persistencia.ocupados.add(new Object[] { DIA, 9 * 60 + 30, 30 });
+        persistencia.ocupados.add(new Object[] { DIA.plusDays(1), 9 * 60, 120 });
+
+        List<AgendaDisponibilidad.HuecoLibre> huecos = agenda.huecosLibres(DIA, DIA.plusDays(1), 30);
+
+        assertEquals(3, huecos.size());
+        assertHueco(huecos.get(0), "09:00", "09:30");
+        assertHueco(huecos.get(1), "10:00", "10:30");
+        assertHueco(huecos.get(2), "10:30", "11:00");
+    }
+
+    @Test
+    void turnoCreadoSeMarcaSinVolverALaBase() {
+        persistencia.horarios.add(new Horario(1, "09:00", "10:00"));
+        agenda.huecosLibres(DIA, DIA, 30);
+
+        agenda.turnoCreado(turno(DIA, "09:00", 30));
+        List<AgendaDisponibilidad.HuecoLibre> huecos = agenda.huecosLibres(DIA, DIA, 30);
+
+        assertEquals(1, persistencia.lecturas.size());
+        assertEquals(1, huecos.size());
+        assertHueco(huecos.get(0), "09:30", "10:00");
+    }
+
+    @Test
+    void turnoEliminadoDescartaElDia() {
+        agenda.huecosLibres(DIA, DIA, 30);
+
+        agenda.turnoEliminado(turno(DIA, "09:00", 30));
+        agenda.huecosLibres(DIA, DIA, 30);
+
+        assertEquals(2, persistencia.lecturas.size());
+    }
+
+    @Test
+    void proximoHuecoSaltaLosDiasLlenos() {
+        persistencia.horarios.add(new Horario(1, "09:00", "10:00"));
+        persistencia.ocupados.add(new Object[] { DIA, 9 * 60, 60 });
+
+        AgendaDisponibilidad.HuecoLibre hueco = agenda.proximoHueco(DIA, 30);
+
+        assertEquals(DIA.plusDays(1), hueco.getFecha());
+        assertEquals(LocalTime.of(9, 0), hueco.getInicio());
+    }
+
+    @Test
+    void proximoHuecoSinLugarDevuelveNull() {
+        persistencia.horarios.add(new Horario(1, "09:00", "09:20"));
+
+        assertNull(agenda.proximoHueco(DIA, 30));
+    }
+
+    // ============== MEMORIA ==============
+
+    @Test
+    void losDiasLeidosQuedanEnMemoria() {
+        agenda.huecosLibres(DIA, DIA.plusDays(2), 30);
+        agenda.huecosLibres(DIA.plusDays(1), DIA.plusDays(1), 30);
+
+        assertEquals(1, persistencia.lecturas.size());
+    }
+
+    @Test
+    void soloSeLeeElTramoQueFalta() {
+        agenda.huecosLibres(DIA, DIA.plusDays(2), 30);
+        agenda.huecosLibres(DIA.plusDays(1), DIA.plusDays(5), 30);
+
+        assertEquals(2, persistencia.lecturas.size());
+        assertEquals(DIA.plusDays(3), persistencia.lecturas.get(1)[0]);
+        assertEquals(DIA.plusDays(5), persistencia.lecturas.get(1)[1]);
+    }
+
+    @Test
+    void elDiaMenosUsadoSaleDeMemoria() {
+        // 401 días: uno más de los que se guardan
+        agenda.huecosLibres(DIA, DIA.plusDays(400), 30);
+        agenda.huecosLibres(DIA.plusDays(400), DIA.plusDays(400), 30);
+        assertEquals(1, persistencia.lecturas.size());
+
+        agenda.huecosLibres(DIA, DIA, 30);
+
+        assertEquals(2, persistencia.lecturas.size());
+        assertEquals(DIA, persistencia.lecturas.get(1)[0]);
+    }
+
+    // ============== CAMBIOS DURANTE LA LECTURA ==============
+
+    @Test
+    void lecturaConTurnoNuevoEnCursoNoSePublica() {
+        persistencia.horarios.add(new Horario(1, "09:00", "10:00"));
+        // Mientras la agenda lee la base se da de alta un turno que esa lectura no ve
+        persistencia.alLeer = () -> agenda.turnoCreado(turno(DIA, "09:00", 30));
+
+        List<AgendaDisponibilidad.HuecoLibre> primera = agenda.huecosLibres(DIA, DIA, 30);
+        persistencia.alLeer = null;
+        persistencia.ocupados.add(new Object[] { DIA, 9 * 60, 30 });
+        List<AgendaDisponibilidad.HuecoLibre> segunda = agenda.huecosLibres(DIA, DIA, 30);
+
+        assertEquals(2, primera.size());
+        assertEquals(2, persistencia.lecturas.size());
+        assertEquals(1, segunda.size());
+        assertHueco(segunda.get(0), "09:30", "10:00");
+    }
+
+    @Test
+    void lecturaConInvalidacionEnCursoNoSePublica() {
+        persistencia.alLeer = agenda::invalidar;
+
+        agenda.huecosLibres(DIA, DIA, 30);
+        persistencia.alLeer = null;
+        agenda.huecosLibres(DIA, DIA, 30);
+        agenda.huecosLibres(DIA, DIA, 30);
+
+        assertEquals(2, persistencia.lecturas.size());
+        assertEquals(2, persistencia.lecturasHorarios);
+    }
+
+    @Test
+    void turnoQueNoOcupaHorarioNoCuentaComoCambio() {
+        Turno cancelado = turno(DIA, "09:00", 30);
+        cancelado.setEstado(Turno.EstadoTurno.CANCELADO);
+        persistencia.alLeer = () -> agenda.turnoCreado(cancelado);
+
+        agenda.huecosLibres(DIA, DIA, 30);
+        persistencia.alLeer = null;
+        agenda.huecosLibres(DIA, DIA, 30);
+
+        assertNull(cancelado.getOcupaHorario());
+        assertEquals(1, persistencia.lecturas.size());
+    }
+
+    private static Turno turno(LocalDate fecha, String hora, int duracion) {
+        Turno t = new Turno(fecha, hora, "Control", null, null);
+        t.setDuracionMinutos(duracion);
+        return t;
+    }
+
+    private static void assertHueco(AgendaDisponibilidad.HuecoLibre hueco, String inicio, String fin) {
+        assertEquals(LocalTime.parse(inicio), hueco.getInicio());
+        assertEquals(LocalTime.parse(fin), hueco.getFin());
+        assertTrue(hueco.getInicio().isBefore(hueco.getFin()));
+    }
+
+    /**
+     * Persistencia sin EntityManagerFactory: la agenda solo usa traerHorarios y
+     * traerHorariosOcupados.
+     */
+    private static class PersistenciaFalsa extends ControladoraPersistencia {
+
+        final List<Horario> horarios = new ArrayList<>();
+        final List<Object[]> ocupados = new ArrayList<>();
+        final List<LocalDate[]> lecturas = new ArrayList<>();
+        int lecturasHorarios;
+        Runnable alLeer;
+
+        PersistenciaFalsa() {
+            super(null);
+        }
+
+        @Override
+        public List<Horario> traerHorarios() {
+            lecturasHorarios++;
+            return new ArrayList<>(horarios);
+        }
+
+        @Override
+        public List<Object[]> traerHorariosOcupados(LocalDate desde, LocalDate hasta) {
+            lecturas.add(new LocalDate[] { desde, hasta });
+            if (alLeer != null) {
+                alLeer.run();
+            }
+            List<Object[]> filas = new ArrayList<>();
+            for (Object[] fila : ocupados) {
+                LocalDate dia = (LocalDate) fila[0];
+                if (!dia.isBefore(desde) && !dia.isAfter(hasta)) {
+                    filas.add(fila);
+                }
+            }
+            return filas;
+        }
+    }
+}
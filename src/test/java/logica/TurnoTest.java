@@ -0,0 +1,77 @@
+package logica;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Reglas del Turno que no dependen de la base: superposición de horarios y
+ * límites de la duración.
+ */
+class TurnoTest {
+
+    private static final LocalDate DIA = LocalDate.of(2026, 3, 2);
+
+    // ============== SUPERPOSICIÓN ==============
+
+    @Test
+    void turnoLargoPisaAlQueEmpiezaDentroDeEl() {
+        Turno nueve = turno(DIA, "09:00", 60);
+        Turno nueveYMedia = turno(DIA, "09:30", 30);
+
+        assertTrue(nueve.seSolapaCon(nueveYMedia));
+        assertTrue(nueveYMedia.seSolapaCon(nueve));
+    }
+
+    @Test
+    void mismoInicioSeSolapa() {
+        assertTrue(turno(DIA, "9:00", 30).seSolapaCon(turno(DIA, "09:00", 30)));
+    }
+
+    @Test
+    void turnosContiguosNoSeSolapan() {
+        Turno nueve = turno(DIA, "09:00", 60);
+        Turno diez = turno(DIA, "10:00", 30);
+
+        assertFalse(nueve.seSolapaCon(diez));
+        assertFalse(diez.seSolapaCon(nueve));
+    }
+
+    @Test
+    void otroDiaNoSeSolapa() {
+        assertFalse(turno(DIA, "09:00", 60).seSolapaCon(turno(DIA.plusDays(1), "09:30", 30)));
+    }
+
+    @Test
+    void turnoCanceladoNoOcupaHorario() {
+        Turno cancelado = turno(DIA, "09:30", 30);
+        cancelado.setEstado(Turno.EstadoTurno.CANCELADO);
+
+        assertFalse(turno(DIA, "09:00", 60).seSolapaCon(cancelado));
+        assertFalse(cancelado.seSolapaCon(turno(DIA, "09:00", 60)));
+    }
+
+    @Test
+    void sinHoraNoSeSolapa() {
+        assertFalse(turno(DIA, null, 30).seSolapaCon(turno(DIA, "09:00", 30)));
+    }
+
+    // ============== DURACIÓN ==============
+
+    @Test
+    void duracionFueraDeRangoSeRechaza() {
+        Turno t = turno(DIA, "09:00", 30);
+
+        assertThrows(IllegalArgumentException.class, () -> t.setDuracionMinutos(0));
+        assertThrows(IllegalArgumentException.class, () -> t.setDuracionMinutos(Turno.DURACION_MAXIMA_MINUTOS + 1));
+    }
+
+    private static Turno turno(LocalDate fecha, String hora, int duracion) {
+        Turno t = new Turno(fecha, hora, "Control", null, null);
+        t.setDuracionMinutos(duracion);
+        return t;
+    }
+}
@@ -0,0 +1,460 @@
+package servlets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * FiltroCompresion contra una petición y una respuesta de mentira (Proxy): la
+ * respuesta guarda status, encabezados y bytes tal como los dejaría el
+ * contenedor.
+ */
+class FiltroCompresionTest {
+
+    private FiltroCompresion filtro;
+
+    @BeforeEach
+    void iniciar() throws Exception {
+        filtro = new FiltroCompresion();
+        Map<String, String> params = new HashMap<>();
+        params.put("tipos", "application/json:512, text/html");
+        params.put("umbral", "1024");
+        filtro.init(proxy(FilterConfig.class, (metodo, args) ->
+                "getInitParameter".equals(metodo) ? params.get((String) args[0]) : null));
+    }
+
+    // ============== DECISIÓN ==============
+
+    @Test
+    void respuestaChicaSaleSinComprimirConSuLargo() throws Exception {
+        RespuestaFalsa r = filtrar(peticion("gzip", "/SvPaciente"), res -> {
+            res.setContentType("application/json");
+            res.setContentLength(100);
+            res.getWriter().write(texto(100));
+        });
+
+        assertNull(r.encabezado("Content-Encoding"));
+        assertEquals("100", r.encabezado("Content-Length"));
+        assertEquals(texto(100), r.cuerpo());
+    }
+
+    @Test
+    void respuestaGrandeSeComprimeYNoConservaElLargo() throws Exception {
+        RespuestaFalsa r = filtrar(peticion("gzip, deflate", "/SvPaciente"), res -> {
+            res.setContentType("application/json;charset=UTF-8");
+            res.setContentLength(5000);
+            res.getWriter().write(texto(5000));
+        });
+
+        assertEquals("gzip", r.encabezado("Content-Encoding"));
+        assertEquals("Accept-Encoding", r.encabezado("Vary"));
+        // El largo era el del texto plano: con gzip no puede viajar
+        assertNull(r.encabezado("Content-Length"));
+        assertEquals(texto(5000), new String(descomprimir(r.bytes()), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void largoDeclaradoMenorAlUmbralNoSeComprime() throws Exception {
+        RespuestaFalsa r = filtrar(peticion("gzip", "/index.html"), res -> {
+            res.setContentType("text/html");
+            res.setHeader("Content-Length", "300");
+            ServletOutputStream out = res.getOutputStream();
+            out.write(texto(300).getBytes(StandardCharsets.UTF_8));
+        });
+
+        assertNull(r.encabezado("Content-Encoding"));
+        assertEquals("300", r.encabezado("Content-Length"));
+    }
+
+    @Test
+    void tipoNoListadoSaleSinTocar() throws Exception {
+        RespuestaFalsa r = filtrar(peticion("gzip", "/IMG/logo.png"), res -> {
+            res.setContentType("image/png");
+            res.getOutputStream().write(new byte[4000]);
+        });
+
+        assertNull(r.encabezado("Content-Encoding"));
+        assertNull(r.encabezado("Vary"));
+        assertEquals(4000, r.bytes().length);
+    }
+
+    @Test
+    void noModificadoNoSeComprime() throws Exception {
+        RespuestaFalsa r = filtrar(peticion("gzip", "/SvPaciente"), res -> {
+            res.setContentType("application/json");
+            res.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        });
+
+        assertEquals(HttpServletResponse.SC_NOT_MODIFIED, r.status);
+        assertNull(r.encabezado("Content-Encoding"));
+        assertEquals(0, r.bytes().length);
+    }
+
+    @Test
+    void sinAcceptEncodingNoSeEnvuelve() throws Exception {
+        RespuestaFalsa r = new RespuestaFalsa();
+        HttpServletResponse original = r.proxy();
+        HttpServletResponse[] recibida = new HttpServletResponse[1];
+        filtro.doFilter(peticion(null, "/SvPaciente"), original,
+                (req, res) -> recibida[0] = (HttpServletResponse) res);
+
+        assertSame(original, recibida[0]);
+    }
+
+    @Test
+    void gzipConCalidadCeroNoSeEnvuelve() throws Exception {
+        RespuestaFalsa r = new RespuestaFalsa();
+        HttpServletResponse original = r.proxy();
+        HttpServletResponse[] recibida = new HttpServletResponse[1];
+        filtro.doFilter(peticion("gzip;q=0, identity", "/SvPaciente"), original,
+                (req, res) -> recibida[0] = (HttpServletResponse) res);
+
+        assertSame(original, recibida[0]);
+    }
+
+    @Test
+    void flujoDeEventosNoSeEnvuelveAunqueFalteAccept() throws Exception {
+        RespuestaFalsa r = new RespuestaFalsa();
+        HttpServletResponse original = r.proxy();
+        HttpServletResponse[] recibida = new HttpServletResponse[1];
+        filtro.doFilter(peticion("gzip", "/SvEventos"), original,
+                (req, res) -> recibida[0] = (HttpServletResponse) res);
+
+        assertSame(original, recibida[0]);
+    }
+
+    // ============== getWriter / getOutputStream ==============
+
+    @Test
+    void getOutputStreamDespuesDeGetWriterFalla() throws Exception {
+        filtrar(peticion("gzip", "/SvPaciente"), res -> {
+            res.getWriter();
+            assertThrows(IllegalStateException.class, res::getOutputStream);
+        });
+    }
+
+    @Test
+    void getWriterDespuesDeGetOutputStreamFalla() throws Exception {
+        filtrar(peticion("gzip", "/SvPaciente"), res -> {
+            res.getOutputStream();
+            assertThrows(IllegalStateException.class, res::getWriter);
+        });
+    }
+
+    @Test
+    void getWriterDevuelveSiempreElMismo() throws Exception {
+        filtrar(peticion("gzip", "/SvPaciente"), res -> assertSame(res.getWriter(), res.getWriter()));
+    }
+
+    @Test
+    void resetBufferAntesDeDecidirDescartaLoEscrito() throws Exception {
+        // Es lo que hace SalidaJson.error cuando falla un listado antes de mandar nada
+        RespuestaFalsa r = filtrar(peticion("gzip", "/SvPaciente"), res -> {
+            res.setContentType("application/json");
+            res.getWriter().write("[{\"dni\":\"1\"}");
+            res.getWriter().flush();
+            res.resetBuffer();
+            res.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            res.getWriter().write("{\"error\":\"x\"}");
+        });
+
+        assertEquals(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, r.status);
+        assertEquals("{\"error\":\"x\"}", r.cuerpo());
+    }
+
+    @Test
+    void comprimiendoLaRespuestaQuedaComprometida() throws Exception {
+        filtrar(peticion("gzip", "/SvPaciente"), res -> {
+            res.setContentType("application/json");
+            res.getOutputStream().write(new byte[600]);
+            assertTrue(res.isCommitted());
+        });
+    }
+
+    @Test
+    void escribirSinBloqueoNoSeSoportaConCompresion() throws Exception {
+        filtrar(peticion("gzip", "/SvPaciente"), res -> {
+            ServletOutputStream out = res.getOutputStream();
+            assertThrows(IllegalStateException.class, () -> out.setWriteListener(new WriteListener() {
+                @Override
+                public void onWritePossible() {
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                }
+            }));
+        });
+    }
+
+    // ============== ETag ==============
+
+    @Test
+    void etagDebilNoCambiaAlComprimir() throws Exception {
+        RespuestaFalsa r = filtrar(peticion("gzip", "/SvPaciente"), res -> {
+            res.setHeader("ETag", "W/\"pacientes-1\"");
+            res.setContentType("application/json");
+            res.getWriter().write(texto(2000));
+        });
+
+        assertEquals("gzip", r.encabezado("Content-Encoding"));
+        assertEquals("W/\"pacientes-1\"", r.encabezado("ETag"));
+    }
+
+    @Test
+    void etagFuerteSeDebilitaAlComprimir() throws Exception {
+        RespuestaFalsa r = filtrar(peticion("gzip", "/index.html"), res -> {
+            res.setHeader("ETag", "\"abc\"");
+            res.setContentType("text/html");
+            res.getWriter().write(texto(2000));
+        });
+
+        assertEquals("W/\"abc\"", r.encabezado("ETag"));
+    }
+
+    @Test
+    void etagFuerteSeConservaSinComprimir() throws Exception {
+        RespuestaFalsa r = filtrar(peticion("gzip", "/index.html"), res -> {
+            res.setHeader("ETag", "\"abc\"");
+            res.setContentType("text/html");
+            res.getWriter().write(texto(200));
+        });
+
+        assertNull(r.encabezado("Content-Encoding"));
+        assertEquals("\"abc\"", r.encabezado("ETag"));
+    }
+
+    // ============== CONFIGURACIÓN ==============
+
+    @Test
+    void nivelFueraDeRangoUsaElDefault() throws Exception {
+        filtro = new FiltroCompresion();
+        filtro.init(proxy(FilterConfig.class, (metodo, args) ->
+                "getInitParameter".equals(metodo) && "nivel".equals(args[0]) ? "12" : null));
+
+        RespuestaFalsa r = filtrar(peticion("gzip", "/SvPaciente"), res -> {
+            res.setContentType("application/json");
+            res.getWriter().write(texto(5000));
+        });
+
+        assertEquals("gzip", r.encabezado("Content-Encoding"));
+        assertEquals(texto(5000), new String(descomprimir(r.bytes()), StandardCharsets.UTF_8));
+    }
+
+    // ============== AUXILIARES ==============
+
+    private RespuestaFalsa filtrar(HttpServletRequest peticion, Servlet servlet) throws Exception {
+        RespuestaFalsa r = new RespuestaFalsa();
+        FilterChain cadena = (req, res) -> {
+            try {
+                servlet.atender((HttpServletResponse) res);
+            } catch (IOException | RuntimeException | Error e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        };
+        filtro.doFilter(peticion, r.proxy(), cadena);
+        return r;
+    }
+
+    private static HttpServletRequest peticion(String acceptEncoding, String servletPath) {
+        Map<String, String> encabezados = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        if (acceptEncoding != null) {
+            encabezados.put("Accept-Encoding", acceptEncoding);
+        }
+        return proxy(HttpServletRequest.class, (metodo, args) -> {
+            switch (metodo) {
+                case "getHeader":
+                    return encabezados.get((String) args[0]);
+                case "getMethod":
+                    return "GET";
+                case "getServletPath":
+                    return servletPath;
+                case "isAsyncStarted":
+                    return false;
+                default:
+                    return null;
+            }
+        });
+    }
+
+    private static String texto(int largo) {
+        char[] c = new char[largo];
+        for (int i = 0; i < largo; i++) {
+            c[i] = (char) ('a' + i % 7);
+        }
+        return new String(c);
+    }
+
+    private static byte[] descomprimir(byte[] gzip) throws IOException {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(gzip))) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[4096];
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    // Lo que haría el servlet con la respuesta que le pasa el filtro
+    @FunctionalInterface
+    private interface Servlet {
+
+        void atender(HttpServletResponse res) throws Exception;
+    }
+
+    @FunctionalInterface
+    private interface Manejo {
+
+        Object invocar(String metodo, Object[] args) throws Exception;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> tipo, Manejo manejo) {
+        return (T) Proxy.newProxyInstance(tipo.getClassLoader(), new Class<?>[] { tipo }, (p, m, args) -> {
+            Object r = manejo.invocar(m.getName(), args);
+            if (r == null && m.getReturnType() == boolean.class) {
+                return false;
+            }
+            if (r == null && m.getReturnType() == int.class) {
+                return 0;
+            }
+            if (r == null && m.getReturnType() == long.class) {
+                return 0L;
+            }
+            return r;
+        });
+    }
+
+    /**
+     * Lo que el contenedor terminaría enviando: status, encabezados y bytes.
+     */
+    private static class RespuestaFalsa {
+
+        int status = HttpServletResponse.SC_OK;
+        private final Map<String, String> encabezados = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        private final ByteArrayOutputStream cuerpo = new ByteArrayOutputStream();
+        private String contentType;
+        private String charset = "UTF-8";
+        private boolean comprometida;
+
+        private final ServletOutputStream salida = new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+                comprometida = true;
+                cuerpo.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                comprometida = true;
+                cuerpo.write(b, off, len);
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener listener) {
+            }
+        };
+
+        String encabezado(String nombre) {
+            return encabezados.get(nombre);
+        }
+
+        byte[] bytes() {
+            return cuerpo.toByteArray();
+        }
+
+        String cuerpo() {
+            return new String(bytes(), StandardCharsets.UTF_8);
+        }
+
+        HttpServletResponse proxy() {
+            return FiltroCompresionTest.proxy(HttpServletResponse.class, (metodo, args) -> {
+                switch (metodo) {
+                    case "getStatus":
+                        return status;
+                    case "setStatus":
+                        status = (Integer) args[0];
+                        return null;
+                    case "getContentType":
+                        return contentType;
+                    case "setContentType":
+                        contentType = (String) args[0];
+                        return null;
+                    case "getCharacterEncoding":
+                        return charset;
+                    case "setCharacterEncoding":
+                        charset = (String) args[0];
+                        return null;
+                    case "setContentLength":
+                    case "setContentLengthLong":
+                        encabezados.put("Content-Length", String.valueOf(args[0]));
+                        return null;
+                    case "setHeader":
+                        encabezados.put((String) args[0], (String) args[1]);
+                        return null;
+                    case "addHeader":
+                        encabezados.merge((String) args[0], (String) args[1], (a, b) -> a + ", " + b);
+                        return null;
+                    case "getHeader":
+                        return encabezados.get((String) args[0]);
+                    case "containsHeader":
+                        return encabezados.containsKey((String) args[0]);
+                    case "getOutputStream":
+                        return salida;
+                    case "isCommitted":
+                        return comprometida;
+                    case "resetBuffer":
+                        if (comprometida) {
+                            throw new IllegalStateException("Respuesta ya enviada");
+                        }
+                        cuerpo.reset();
+                        return null;
+                    case "reset":
+                        cuerpo.reset();
+                        encabezados.clear();
+                        status = HttpServletResponse.SC_OK;
+                        return null;
+                    case "flushBuffer":
+                        comprometida = true;
+                        return null;
+                    case "toString":
+                        return "RespuestaFalsa" + Arrays.asList(status, encabezados);
+                    default:
+                        return null;
+                }
+            });
+        }
+    }
+}